@@ -0,0 +1,66 @@
+package com.github.lernejo.korekto.grader.amqp;
+
+import okhttp3.MediaType;
+import okhttp3.ResponseBody;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import retrofit2.Converter;
+import retrofit2.Retrofit;
+import retrofit2.converter.jackson.JacksonConverterFactory;
+
+import java.io.IOException;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.util.OptionalInt;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Reading the length of the message list while polling, compared to the full deserialization done by the Jackson
+ * converter of the API client.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ChatApiProbeBenchmark {
+
+    private static final MediaType JSON = MediaType.get("application/json");
+
+    @Param({"10", "1000", "100000"})
+    int messages;
+
+    private String body;
+    private Converter<ResponseBody, ?> converter;
+
+    @Setup
+    public void setUp() throws NoSuchMethodException {
+        Retrofit retrofit = new Retrofit.Builder()
+            .baseUrl("http://localhost/")
+            .addConverterFactory(JacksonConverterFactory.create())
+            .build();
+        // the converter Retrofit picks for ChatApiClient#getMessages
+        Type messagesType = ((ParameterizedType) ChatApiClient.class.getMethod("getMessages").getGenericReturnType()).getActualTypeArguments()[0];
+        converter = JacksonConverterFactory.create().responseBodyConverter(messagesType, new Annotation[0], retrofit);
+        body = IntStream.range(0, messages)
+            .mapToObj(i -> "\"message " + i + "\"")
+            .collect(Collectors.joining(",", "[", "]"));
+    }
+
+    @Benchmark
+    public OptionalInt count_elements() {
+        return ChatApiProbe.countElements(ResponseBody.create(JSON, body));
+    }
+
+    @Benchmark
+    public Object deserialize_list() throws IOException {
+        return converter.convert(ResponseBody.create(JSON, body));
+    }
+}
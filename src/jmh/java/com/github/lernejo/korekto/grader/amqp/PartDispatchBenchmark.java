@@ -0,0 +1,97 @@
+package com.github.lernejo.korekto.grader.amqp;
+
+import com.github.lernejo.korekto.grader.amqp.parts.DependentPartGrader;
+import com.github.lernejo.korekto.grader.amqp.parts.StagedPartGrader;
+import com.github.lernejo.korekto.toolkit.GradePart;
+import com.github.lernejo.korekto.toolkit.GradingConfiguration;
+import com.github.lernejo.korekto.toolkit.PartGrader;
+import org.jetbrains.annotations.NotNull;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Overhead added by {@link AmqpGrader#applyPartGrader} around each part: required facts, stage slot and duration metric.
+ * <p>
+ * Parts are stubs giving their grade right away. The staged one holds a {@link StageScheduler.Stage#BUILD} slot,
+ * as a {@link StageScheduler.Stage#RUNTIME} one would build the project first.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class PartDispatchBenchmark {
+
+    // stub parts never acquire a broker, none is started
+    private final AmqpGrader grader = new AmqpGrader(null);
+    private final PartGrader<LaunchingContext> plainPart = new StubPart("Plain part");
+    private final PartGrader<LaunchingContext> stagedPart = new StubStagedPart("Staged part");
+    private LaunchingContext context;
+
+    @Setup
+    public void setUp() {
+        context = grader.gradingContext(new GradingConfiguration("https://github.com/lernejo/amqp_training", "", "", Path.of("target")));
+        for (GradingFacts.Fact fact : GradingFacts.Fact.values()) {
+            context.facts.establish(fact, true);
+        }
+    }
+
+    @Benchmark
+    public GradePart plain_part() {
+        return grader.applyPartGrader(context, plainPart);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public GradePart dependent_staged_part() {
+        return grader.applyPartGrader(context, stagedPart);
+    }
+
+    private record StubPart(String name) implements PartGrader<LaunchingContext> {
+
+        @NotNull
+        @Override
+        public Double maxGrade() {
+            return 1.0D;
+        }
+
+        @NotNull
+        @Override
+        public GradePart grade(LaunchingContext context) {
+            return result(List.of(), maxGrade());
+        }
+    }
+
+    private record StubStagedPart(String name) implements DependentPartGrader, StagedPartGrader {
+
+        @Override
+        public List<GradingFacts.Fact> requirements() {
+            return List.of(GradingFacts.Fact.BUILT, GradingFacts.Fact.COMPILED, GradingFacts.Fact.CLIENT_MODULE, GradingFacts.Fact.SERVER_BOOTS);
+        }
+
+        @Override
+        public StageScheduler.Stage stage() {
+            return StageScheduler.Stage.BUILD;
+        }
+
+        @NotNull
+        @Override
+        public Double maxGrade() {
+            return 1.0D;
+        }
+
+        @NotNull
+        @Override
+        public GradePart grade(LaunchingContext context) {
+            return result(List.of(), maxGrade());
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package com.github.lernejo.korekto.grader.amqp;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Hash of the source trees a memoized part depends on, computed for each part of each student.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class SourceTreesBenchmark {
+
+    @Param({"50", "500"})
+    int files;
+
+    private Path root;
+
+    @Setup
+    public void setUp() throws IOException {
+        root = Files.createTempDirectory("korekto-bench");
+        for (String module : List.of("client", "server")) {
+            Path sources = Files.createDirectories(root.resolve(module).resolve("src/main/java/fr/lernejo/chat"));
+            Path target = Files.createDirectories(root.resolve(module).resolve("target/classes"));
+            for (int i = 0; i < files / 2; i++) {
+                Files.writeString(sources.resolve("Class" + i + ".java"), "package fr.lernejo.chat;\n\npublic class Class" + i + " {\n}\n");
+                Files.write(target.resolve("Class" + i + ".class"), new byte[2048]);
+            }
+        }
+        Files.writeString(root.resolve("pom.xml"), "<project/>");
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        try (Stream<Path> paths = Files.walk(root)) {
+            for (Path path : paths.sorted(Comparator.reverseOrder()).toList()) {
+                Files.delete(path);
+            }
+        }
+    }
+
+    @Benchmark
+    public String hash() {
+        return SourceTrees.hash(root, List.of("pom.xml", "client", "server"));
+    }
+}
@@ -0,0 +1,48 @@
+package com.github.lernejo.korekto.grader.amqp.parts;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.Charset;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Capture of a process output: charset detection, line decoding and bounded buffering.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ProcessOutputBenchmark {
+
+    @Param({"100", "10000"})
+    int lines;
+
+    @Param({"UTF-8", "windows-1252"})
+    String charset;
+
+    private byte[] output;
+
+    @Setup
+    public void setUp() {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < lines; i++) {
+            text.append("2021-10-18 12:00:00.000  INFO 4242 --- [main] fr.lernejo.chat.Launcher : Message envoyé n°").append(i).append('\n');
+        }
+        output = text.toString().getBytes(Charset.forName(charset));
+    }
+
+    @Benchmark
+    public List<String> capture() {
+        ProcessOutput processOutput = new ProcessOutput(List.of(new ByteArrayInputStream(output)), 200);
+        processOutput.awaitClosed(10_000L);
+        return processOutput.lines();
+    }
+}
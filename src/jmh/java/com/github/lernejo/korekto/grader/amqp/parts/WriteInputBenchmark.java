@@ -0,0 +1,41 @@
+package com.github.lernejo.korekto.grader.amqp.parts;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Writing a line to the standard input of the client process, <i>cat</i> standing for the client.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class WriteInputBenchmark {
+
+    private Process process;
+
+    @Setup
+    public void setUp() throws IOException {
+        process = new ProcessBuilder("cat")
+            .redirectOutput(ProcessBuilder.Redirect.DISCARD)
+            .start();
+    }
+
+    @TearDown
+    public void tearDown() {
+        process.destroyForcibly();
+    }
+
+    @Benchmark
+    public void write_input() {
+        Part4Grader.writeInput(process, "message 1\n");
+    }
+}
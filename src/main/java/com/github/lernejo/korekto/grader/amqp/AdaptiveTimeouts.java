@@ -0,0 +1,154 @@
+package com.github.lernejo.korekto.grader.amqp;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.OptionalLong;
+import java.util.function.DoubleSupplier;
+
+/**
+ * Timeouts derived from the latencies observed in previous gradings, instead of static worst cases.
+ * <p>
+ * Once enough samples are known, a timeout is the 95th percentile of past latencies times a safety margin, scaled by the
+ * current machine load, and bounded by the configured timeout (itself scaled by the load).
+ * Latencies are kept locally between runs, and this can be disabled with <code>-Dadaptive_timeouts=false</code>.
+ */
+public class AdaptiveTimeouts {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(AdaptiveTimeouts.class);
+
+    static final int HISTORY_SIZE = 200;
+    static final int MIN_SAMPLES = 10;
+    private static final double MARGIN = 3.0D;
+    private static final double MAX_LOAD_FACTOR = 4.0D;
+
+    private final boolean enabled = Boolean.parseBoolean(System.getProperty("adaptive_timeouts", "true"));
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final Map<Latency, Deque<Long>> samples = new EnumMap<>(Latency.class);
+    private final Path file;
+    private final DoubleSupplier loadFactor;
+
+    public AdaptiveTimeouts() {
+        this(GraderStorage.directory("history").resolve("latencies.json"), AdaptiveTimeouts::systemLoadFactor);
+    }
+
+    AdaptiveTimeouts(Path file, DoubleSupplier loadFactor) {
+        this.file = file;
+        this.loadFactor = loadFactor;
+        for (Latency latency : Latency.values()) {
+            samples.put(latency, new ArrayDeque<>());
+        }
+        load();
+    }
+
+    public synchronized void record(Latency latency, long millis) {
+        Deque<Long> latencySamples = samples.get(latency);
+        latencySamples.addLast(millis);
+        while (latencySamples.size() > HISTORY_SIZE) {
+            latencySamples.removeFirst();
+        }
+    }
+
+    /**
+     * @param ceilingMillis the configured timeout, used as is until enough latencies are known
+     */
+    public synchronized long timeoutMillis(Latency latency, long ceilingMillis) {
+        if (!enabled) {
+            return ceilingMillis;
+        }
+        double load = loadFactor();
+        long scaledCeiling = Math.round(ceilingMillis * load);
+        OptionalLong p95 = percentile(latency, 0.95D);
+        if (p95.isEmpty()) {
+            return scaledCeiling;
+        }
+        long adaptive = Math.round(p95.getAsLong() * MARGIN * load);
+        return Math.min(scaledCeiling, Math.max(latency.floorMillis, adaptive));
+    }
+
+    /**
+     * @return true if the timeout is shorter than the configured one, having been derived from past latencies
+     */
+    public synchronized boolean isShortened(Latency latency, long ceilingMillis) {
+        return timeoutMillis(latency, ceilingMillis) < Math.round(ceilingMillis * loadFactor());
+    }
+
+    /**
+     * @return how much slower than usual the machine is expected to be, at least 1
+     */
+    public double loadFactor() {
+        return enabled ? Math.min(MAX_LOAD_FACTOR, Math.max(1.0D, loadFactor.getAsDouble())) : 1.0D;
+    }
+
+    synchronized OptionalLong percentile(Latency latency, double percentile) {
+        List<Long> sorted = samples.get(latency).stream().sorted().toList();
+        if (sorted.size() < MIN_SAMPLES) {
+            return OptionalLong.empty();
+        }
+        return OptionalLong.of(GradingMetrics.percentile(sorted, percentile));
+    }
+
+    private void load() {
+        if (file == null || !Files.exists(file)) {
+            return;
+        }
+        try {
+            Map<String, List<Long>> stored = objectMapper.readValue(file.toFile(), new TypeReference<>() {
+            });
+            for (Latency latency : Latency.values()) {
+                stored.getOrDefault(latency.name(), List.of()).forEach(sample -> record(latency, sample));
+            }
+        } catch (IOException e) {
+            LOGGER.warn("Unable to read latency history " + file + ": " + e.getMessage());
+        }
+    }
+
+    public synchronized void save() {
+        if (file == null) {
+            return;
+        }
+        Map<String, List<Long>> stored = new LinkedHashMap<>();
+        samples.forEach((latency, latencySamples) -> stored.put(latency.name(), new ArrayList<>(latencySamples)));
+        try {
+            objectMapper.writeValue(file.toFile(), stored);
+        } catch (IOException e) {
+            LOGGER.warn("Unable to write latency history " + file + ": " + e.getMessage());
+        }
+    }
+
+    private static double systemLoadFactor() {
+        double loadAverage = ManagementFactory.getOperatingSystemMXBean().getSystemLoadAverage();
+        return loadAverage < 0 ? 1.0D : loadAverage / Runtime.getRuntime().availableProcessors();
+    }
+
+    public enum Latency {
+        /**
+         * From the server launch to its port being listened to.
+         */
+        SERVER_START(5_000L),
+        /**
+         * From messages being sent by the client to their display by the server API.
+         */
+        MESSAGE_CONSUMPTION(1_000L),
+        ;
+
+        private final long floorMillis;
+
+        Latency(long floorMillis) {
+            this.floorMillis = floorMillis;
+        }
+    }
+}
@@ -1,58 +1,76 @@
 package com.github.lernejo.korekto.grader.amqp;
 
+import com.github.lernejo.korekto.grader.amqp.parts.DependentPartGrader;
+import com.github.lernejo.korekto.grader.amqp.parts.MemoizablePartGrader;
+import com.github.lernejo.korekto.grader.amqp.parts.Part1Grader;
 import com.github.lernejo.korekto.grader.amqp.parts.Part3Grader;
 import com.github.lernejo.korekto.grader.amqp.parts.Part4Grader;
+import com.github.lernejo.korekto.grader.amqp.parts.Part5Grader;
+import com.github.lernejo.korekto.grader.amqp.parts.StagedPartGrader;
 import com.github.lernejo.korekto.toolkit.GradePart;
 import com.github.lernejo.korekto.toolkit.Grader;
 import com.github.lernejo.korekto.toolkit.GradingConfiguration;
 import com.github.lernejo.korekto.toolkit.PartGrader;
 import com.github.lernejo.korekto.toolkit.misc.HumanReadableDuration;
-import com.github.lernejo.korekto.toolkit.misc.Ports;
 import com.github.lernejo.korekto.toolkit.misc.SubjectForToolkitInclusion;
 import com.github.lernejo.korekto.toolkit.partgrader.GitHubActionsPartGrader;
-import com.github.lernejo.korekto.toolkit.partgrader.MavenCompileAndTestPartGrader;
+import com.github.lernejo.korekto.toolkit.thirdparty.maven.MavenReader;
 import org.jetbrains.annotations.NotNull;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.testcontainers.containers.GenericContainer;
-import retrofit2.Retrofit;
-import retrofit2.converter.jackson.JacksonConverterFactory;
 
-import java.util.Collection;
+import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.List;
-import java.util.concurrent.TimeUnit;
+import java.util.Optional;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
 @SubjectForToolkitInclusion
 public class AmqpGrader implements Grader<LaunchingContext> {
 
+    private static final AtomicInteger THREAD_COUNT = new AtomicInteger();
+
     private final Logger logger = LoggerFactory.getLogger(AmqpGrader.class);
 
-    private final Retrofit retrofit = new Retrofit.Builder()
-        .baseUrl("http://localhost:8085/")
-        .addConverterFactory(JacksonConverterFactory.create())
-        .build();
+    private final int parallelism = Integer.parseInt(System.getProperty("grading_parallelism", String.valueOf(Math.max(2, Runtime.getRuntime().availableProcessors() / 2))));
+    private final Semaphore gradingSlots = new Semaphore(parallelism, true);
 
-    public final ChatApiClient client = retrofit.create(ChatApiClient.class);
+    private final boolean stressPart = Boolean.parseBoolean(System.getProperty("stress_part", "false"));
 
-    private final GenericContainer genericContainer;
+    private final BrokerPool brokerPool;
+    private final ResultCache resultCache = new ResultCache();
+    private final PartMemo partMemo = new PartMemo();
+    private final StageScheduler stageScheduler = new StageScheduler(parallelism);
+    private final AdaptiveTimeouts adaptiveTimeouts = new AdaptiveTimeouts();
+    private final GradingMetrics metrics = new GradingMetrics();
 
     public AmqpGrader() {
-        this.genericContainer = new GenericContainer("rabbitmq:3.9.7-management-alpine");
-        genericContainer.addExposedPorts(5672, 15672);
-        try {
-            genericContainer.start();
-        } catch (RuntimeException e) {
-            throw new IllegalStateException("Unable to use Docker, make sure the Docker engine is started", e);
-        }
-        logger.info("Waiting for RabbitMQ to boot");
-        Ports.waitForPortToBeListenedTo(genericContainer.getMappedPort(5672), TimeUnit.SECONDS, 20L);
-        logger.info("RabbitMQ up (management on http://localhost:" + genericContainer.getMappedPort(15672) + " )");
+        this(new BrokerPool());
+    }
+
+    /**
+     * @param brokerPool brokers lent to grading jobs, only acquired when a part first needs one
+     */
+    AmqpGrader(BrokerPool brokerPool) {
+        this.brokerPool = brokerPool;
     }
 
     @Override
     public void close() {
-        genericContainer.stop();
+        adaptiveTimeouts.save();
+        metrics.export();
+        brokerPool.close();
+    }
+
+    GradingMetrics metrics() {
+        return metrics;
     }
 
     @Override
@@ -68,35 +86,149 @@ public class AmqpGrader implements Grader<LaunchingContext> {
     @NotNull
     @Override
     public LaunchingContext gradingContext(@NotNull GradingConfiguration configuration) {
-        return new LaunchingContext(configuration, genericContainer.getMappedPort(5672));
+        return new LaunchingContext(configuration, brokerPool, stageScheduler, adaptiveTimeouts, metrics);
     }
 
+    /**
+     * Can be called concurrently for different students, at most {@code grading_parallelism} gradings run at once.
+     * Within those, stages are bounded separately by the {@link StageScheduler}, so that students at different stages overlap.
+     * <p>
+     * Commits already graded by the same grader version are not graded again, see {@link ResultCache}.
+     */
     @Override
     public void run(LaunchingContext context) {
-        context.getGradeDetails().getParts().addAll(grade(context));
+        run(context, graders());
+    }
+
+    /**
+     * @param graders parts to grade, in order, all of them but in tests
+     */
+    void run(LaunchingContext context, List<PartGrader<LaunchingContext>> graders) {
+        Optional<List<GradePart>> cachedParts = resultCache.get(context, graders);
+        if (cachedParts.isPresent()) {
+            logger.debug("Reusing result of a previous grading of the same commit");
+            context.getGradeDetails().getParts().addAll(withUncachedParts(context, graders, cachedParts.get()));
+            return;
+        }
+        try {
+            gradingSlots.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for a grading slot", e);
+        }
+        try {
+            context.reserveServerPort();
+            List<GradePart> parts = grade(context, graders);
+            context.getGradeDetails().getParts().addAll(parts);
+            resultCache.put(context, graders, parts);
+        } finally {
+            gradingSlots.release();
+            context.close();
+            context.releaseServerPort();
+        }
     }
 
-    private Collection<? extends GradePart> grade(LaunchingContext context) {
-        return graders().stream()
+    /**
+     * Grades the given students concurrently, {@code grading_parallelism} at a time.
+     *
+     * @throws IllegalStateException holding the failures of the gradings which failed, after all gradings ended
+     */
+    public void runAll(List<LaunchingContext> contexts) {
+        runAll(contexts, this::run);
+    }
+
+    /**
+     * @param gradeStudent grades a single student, {@link #run(LaunchingContext)} but in tests
+     */
+    void runAll(List<LaunchingContext> contexts, Consumer<LaunchingContext> gradeStudent) {
+        ExecutorService executor = Executors.newFixedThreadPool(parallelism, r -> {
+            Thread thread = new Thread(r, "grading-" + THREAD_COUNT.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            List<Future<?>> gradings = contexts.stream().<Future<?>>map(c -> executor.submit(() -> gradeStudent.accept(c))).toList();
+            IllegalStateException failure = null;
+            for (Future<?> grading : gradings) {
+                try {
+                    grading.get();
+                } catch (ExecutionException e) {
+                    if (failure == null) {
+                        failure = new IllegalStateException("Some gradings failed");
+                    }
+                    failure.addSuppressed(e.getCause());
+                }
+            }
+            if (failure != null) {
+                throw failure;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while grading", e);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Grades again the parts which are not cached, none of them needing the student server.
+     */
+    private List<GradePart> withUncachedParts(LaunchingContext context, List<PartGrader<LaunchingContext>> graders, List<GradePart> cachedParts) {
+        List<GradePart> parts = new ArrayList<>();
+        Iterator<GradePart> cached = cachedParts.iterator();
+        for (PartGrader<LaunchingContext> grader : graders) {
+            parts.add(ResultCache.isCacheable(grader) ? cached.next() : applyPartGrader(context, grader));
+        }
+        return parts;
+    }
+
+    private List<GradePart> grade(LaunchingContext context, List<PartGrader<LaunchingContext>> graders) {
+        context.modules = MavenReader.readModel(context.getExercise()).getModules();
+        context.facts.establish(GradingFacts.Fact.CLIENT_MODULE, context.modules.contains("client"));
+        return graders.stream()
             .map(g -> applyPartGrader(context, g))
             .collect(Collectors.toList());
     }
 
-    private GradePart applyPartGrader(LaunchingContext context, PartGrader<LaunchingContext> g) {
+    GradePart applyPartGrader(LaunchingContext context, PartGrader<LaunchingContext> g) {
+        if (g instanceof DependentPartGrader d) {
+            Optional<GradingFacts.Fact> refutedFact = d.requirements().stream().filter(context.facts::isRefuted).findFirst();
+            if (refutedFact.isPresent()) {
+                logger.debug("Skipping " + g.name() + " as " + refutedFact.get() + " does not hold");
+                return g.result(List.of(refutedFact.get().refutation(context)), 0.0D);
+            }
+        }
         long startTime = System.currentTimeMillis();
         try {
-            return g.grade(context);
+            return g instanceof MemoizablePartGrader m ? partMemo.grade(context, m, () -> gradeInStage(context, g)) : gradeInStage(context, g);
         } finally {
-            logger.debug(g.name() + " in " + HumanReadableDuration.toString(System.currentTimeMillis() - startTime));
+            long duration = System.currentTimeMillis() - startTime;
+            context.metrics.timer("korekto_part_seconds", "part", g.name()).record(duration);
+            logger.debug(g.name() + " in " + HumanReadableDuration.toString(duration));
         }
     }
 
-    private Collection<? extends PartGrader<LaunchingContext>> graders() {
-        return List.of(
-            new MavenCompileAndTestPartGrader<>("Part 1 - Compilation & Tests", 2.0D),
+    private GradePart gradeInStage(LaunchingContext context, PartGrader<LaunchingContext> g) {
+        if (g instanceof StagedPartGrader s) {
+            if (s.stage() == StageScheduler.Stage.RUNTIME) {
+                // the project is built in the BUILD stage, not while holding a RUNTIME slot
+                context.build();
+            }
+            return stageScheduler.run(s.stage(), () -> g.grade(context));
+        }
+        return g.grade(context);
+    }
+
+    List<PartGrader<LaunchingContext>> graders() {
+        List<PartGrader<LaunchingContext>> graders = new ArrayList<>(List.of(
+            new Part1Grader(),
             new GitHubActionsPartGrader<>("Part 2 - CI", 1.0D),
-            new Part3Grader(client),
-            new Part4Grader(client)
-        );
+            new Part3Grader(),
+            new Part4Grader()
+        ));
+        if (stressPart) {
+            graders.add(new Part5Grader());
+        }
+        return graders;
     }
 }
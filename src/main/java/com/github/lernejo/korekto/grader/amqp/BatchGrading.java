@@ -0,0 +1,75 @@
+package com.github.lernejo.korekto.grader.amqp;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.github.lernejo.korekto.toolkit.Exercise;
+import com.github.lernejo.korekto.toolkit.GradePart;
+import com.github.lernejo.korekto.toolkit.GradingConfiguration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Grades a batch of already cloned student projects concurrently, see {@link AmqpGrader#runAll(List)}.
+ * <p>
+ * Each argument is the directory of a project, named after the GitHub login of the student.
+ * Grades are written as JSON in <code>-Dbatch_output</code> (defaults to <i>batch-results.json</i>), and logged per student.
+ */
+public class BatchGrading {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(BatchGrading.class);
+
+    public static void main(String[] args) {
+        List<Path> projects = new ArrayList<>();
+        for (String arg : args) {
+            projects.add(Paths.get(arg).toAbsolutePath());
+        }
+        try (AmqpGrader grader = new AmqpGrader()) {
+            List<LaunchingContext> contexts = new ArrayList<>();
+            for (Path project : projects) {
+                String slug = project.getFileName().toString();
+                LaunchingContext context = grader.gradingContext(new GradingConfiguration(grader.slugToRepoUrl(slug), "", "", project.getParent()));
+                context.setExercise(new Exercise(slug, project));
+                contexts.add(context);
+            }
+            try {
+                grader.runAll(contexts);
+            } finally {
+                write(contexts);
+            }
+        }
+    }
+
+    private static void write(List<LaunchingContext> contexts) {
+        Map<String, Object> results = new LinkedHashMap<>();
+        for (LaunchingContext context : contexts) {
+            List<Map<String, Object>> parts = context.getGradeDetails().getParts().stream()
+                .<Map<String, Object>>map(p -> {
+                    Map<String, Object> part = new LinkedHashMap<>();
+                    part.put("name", p.getId());
+                    part.put("grade", p.getGrade());
+                    part.put("comments", p.getComments());
+                    return part;
+                })
+                .toList();
+            results.put(context.getExercise().getName(), parts);
+            LOGGER.info("Graded " + context.getExercise().getName() + ": " + context.getGradeDetails().getParts().stream().mapToDouble(GradePart::getGrade).sum());
+        }
+        ObjectMapper objectMapper = new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT);
+        Path output = Paths.get(System.getProperty("batch_output", "batch-results.json"));
+        try {
+            objectMapper.writeValue(output.toFile(), results);
+            LOGGER.info("Grades of " + results.size() + " students written in " + output.toAbsolutePath());
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to write grading results in " + output, e);
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package com.github.lernejo.korekto.grader.amqp;
+
+import java.util.Optional;
+
+/**
+ * AMQP 0-9-1 broker serving grading jobs, selected with <code>-Dbroker_backend</code>:
+ * <ul>
+ *     <li><code>docker</code> (default): {@link RabbitMqBroker}, the reference</li>
+ *     <li><code>embedded</code>: {@link EmbeddedBroker}, running in the grader JVM, without management API nor tracing</li>
+ * </ul>
+ */
+public interface Broker {
+
+    static Broker start(int index, boolean reuse) {
+        return embedded()
+            ? EmbeddedBroker.start(index)
+            : RabbitMqBroker.start(index, reuse);
+    }
+
+    /**
+     * @return true if brokers run in the grader JVM
+     */
+    static boolean embedded() {
+        return "embedded".equals(System.getProperty("broker_backend", "docker"));
+    }
+
+    int amqpPort();
+
+    /**
+     * Creates a virtual host dedicated to a single grading job.
+     */
+    VirtualHost createVirtualHost();
+
+    /**
+     * @return empty if the broker does not expose the RabbitMQ management API
+     */
+    Optional<RabbitMqManagementApi> managementApi();
+
+    /**
+     * @return true if the virtual hosts created by the broker trace published messages through the
+     * <a href="https://www.rabbitmq.com/firehose.html">firehose tracer</a>
+     */
+    boolean tracesPublishes();
+
+    void stop();
+}
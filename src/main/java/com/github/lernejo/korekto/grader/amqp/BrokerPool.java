@@ -0,0 +1,133 @@
+package com.github.lernejo.korekto.grader.amqp;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Brokers shared by grading jobs.
+ * <p>
+ * The first broker is started in the background as soon as the pool is created, so that it boots while the first
+ * parts (compilation, CI) are being graded.
+ * A new broker is started when all running ones already serve {@code broker_capacity} grading jobs, up to
+ * {@code broker_max_count} brokers.
+ * <p>
+ * Embedded brokers share the state of the grader JVM, so a single one is started, serving all grading jobs.
+ */
+public class BrokerPool implements AutoCloseable {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(BrokerPool.class);
+
+    private final boolean reuse = Boolean.parseBoolean(System.getProperty("broker_reuse", "false"));
+    private final boolean embedded = Broker.embedded();
+    private final int capacity = embedded ? Integer.MAX_VALUE : Integer.parseInt(System.getProperty("broker_capacity", "8"));
+    private final int maxBrokers = embedded ? 1 : Integer.parseInt(System.getProperty("broker_max_count", "4"));
+    private final ExecutorService executor = Executors.newCachedThreadPool(r -> {
+        Thread thread = new Thread(r, "broker-starter");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final List<PooledBroker> brokers = new ArrayList<>();
+    private int startedBrokers;
+
+    public BrokerPool() {
+        synchronized (this) {
+            startBroker();
+        }
+    }
+
+    /**
+     * Blocks until a broker with spare capacity is up.
+     */
+    public Lease acquire() {
+        PooledBroker pooledBroker;
+        synchronized (this) {
+            while ((pooledBroker = leastLoadedBroker()) == null) {
+                if (brokers.size() < maxBrokers) {
+                    startBroker();
+                } else {
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new IllegalStateException("Interrupted while waiting for a broker", e);
+                    }
+                }
+            }
+            pooledBroker.leases++;
+        }
+        try {
+            return new Lease(pooledBroker, pooledBroker.broker.join());
+        } catch (CompletionException e) {
+            synchronized (this) {
+                brokers.remove(pooledBroker);
+                notifyAll();
+            }
+            throw e.getCause() instanceof RuntimeException re ? re : e;
+        }
+    }
+
+    private PooledBroker leastLoadedBroker() {
+        return brokers.stream()
+            .filter(b -> b.leases < capacity)
+            .min(Comparator.comparingInt(b -> b.leases))
+            .orElse(null);
+    }
+
+    private void startBroker() {
+        int index = startedBrokers++;
+        brokers.add(new PooledBroker(CompletableFuture.supplyAsync(() -> Broker.start(index, reuse), executor)));
+    }
+
+    private synchronized void release(PooledBroker pooledBroker) {
+        pooledBroker.leases--;
+        notifyAll();
+    }
+
+    @Override
+    public synchronized void close() {
+        for (PooledBroker pooledBroker : brokers) {
+            try {
+                pooledBroker.broker.join().stop();
+            } catch (RuntimeException e) {
+                LOGGER.warn("Unable to stop broker: " + e.getMessage());
+            }
+        }
+        brokers.clear();
+        executor.shutdownNow();
+    }
+
+    private static class PooledBroker {
+        private final CompletableFuture<Broker> broker;
+        private int leases;
+
+        private PooledBroker(CompletableFuture<Broker> broker) {
+            this.broker = broker;
+        }
+    }
+
+    /**
+     * Use of a broker by a grading job, to be closed when the job ends.
+     */
+    public class Lease implements AutoCloseable {
+        private final PooledBroker pooledBroker;
+        public final Broker broker;
+
+        private Lease(PooledBroker pooledBroker, Broker broker) {
+            this.pooledBroker = pooledBroker;
+            this.broker = broker;
+        }
+
+        @Override
+        public void close() {
+            release(pooledBroker);
+        }
+    }
+}
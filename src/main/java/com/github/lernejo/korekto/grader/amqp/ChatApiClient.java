@@ -2,13 +2,30 @@ package com.github.lernejo.korekto.grader.amqp;
 
 import java.util.List;
 
+import okhttp3.ResponseBody;
 import retrofit2.Call;
+import retrofit2.Retrofit;
+import retrofit2.converter.jackson.JacksonConverterFactory;
 import retrofit2.http.GET;
 import retrofit2.http.Headers;
 
 public interface ChatApiClient {
 
+    static ChatApiClient create(int serverPort) {
+        return new Retrofit.Builder()
+            .baseUrl("http://localhost:" + serverPort + "/")
+            .addConverterFactory(JacksonConverterFactory.create())
+            .build()
+            .create(ChatApiClient.class);
+    }
+
     @GET("api/message")
     //@Headers("Accept:application/json")
     Call<List<String>> getMessages();
+
+    /**
+     * Same as {@link #getMessages()}, but leaving the body unread.
+     */
+    @GET("api/message")
+    Call<ResponseBody> getRawMessages();
 }
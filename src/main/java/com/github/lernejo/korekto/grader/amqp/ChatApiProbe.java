@@ -0,0 +1,154 @@
+package com.github.lernejo.korekto.grader.amqp;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import okhttp3.ResponseBody;
+import retrofit2.Call;
+import retrofit2.Callback;
+import retrofit2.Response;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Optional;
+import java.util.OptionalInt;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Polls the chat API until it displays an expected number of messages.
+ * <p>
+ * Delay between calls starts small and doubles after each unsatisfying response, so that a fast server is observed
+ * early without flooding a slow one.
+ * While polling, only the length of the JSON array is read.
+ */
+public class ChatApiProbe {
+
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+    private static final long INITIAL_DELAY_MS = 10L;
+    private static final long MAX_DELAY_MS = 250L;
+
+    private final ChatApiClient client;
+
+    public ChatApiProbe(ChatApiClient client) {
+        this.client = client;
+    }
+
+    /**
+     * Reads the messages displayed by the API once their consumption was awaited on the broker side.
+     * <p>
+     * When the broker exposed the state of the queue, consumption is already known and a single call is enough,
+     * polling is only needed when the broker state is unknown (no management API).
+     *
+     * @param queueState last known state of the queue, see {@link QueueMonitor#awaitConsumed}
+     * @throws IOException when the API cannot be reached or does not respond a valid JSON list of strings
+     */
+    public Response<List<String>> awaitMessageCount(int expectedCount, long timeoutMs, Optional<QueueInfo> queueState) throws IOException {
+        if (queueState.isPresent()) {
+            return client.getMessages().execute();
+        }
+        return awaitMessageCount(expectedCount, timeoutMs);
+    }
+
+    /**
+     * Polls until the API displays <code>expectedCount</code> messages, responds unsuccessfully or does not respond a
+     * JSON array, but at most <code>timeoutMs</code>.
+     *
+     * @return the last response, fully deserialized, which does not display <code>expectedCount</code> messages on timeout
+     * @throws IOException when the API cannot be reached or does not respond a valid JSON list of strings
+     */
+    public Response<List<String>> awaitMessageCount(int expectedCount, long timeoutMs) throws IOException {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMs);
+        long delayMs = INITIAL_DELAY_MS;
+        while (true) {
+            long remainingMs = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+            if (remainingMs <= 0) {
+                break;
+            }
+            Call<ResponseBody> call = client.getRawMessages();
+            CompletableFuture<Response<ResponseBody>> pendingResponse = enqueue(call);
+            Response<ResponseBody> response;
+            try {
+                response = pendingResponse.get(remainingMs, TimeUnit.MILLISECONDS);
+            } catch (ExecutionException | TimeoutException e) {
+                // the server may be stopped right after, the call must not outlive the probing
+                pendingResponse.cancel(true);
+                call.cancel();
+                break;
+            } catch (InterruptedException e) {
+                pendingResponse.cancel(true);
+                call.cancel();
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("API probing have been interrupted!");
+            }
+            if (!response.isSuccessful()) {
+                break;
+            }
+            OptionalInt count = countElements(response.body());
+            if (count.isEmpty() || count.getAsInt() == expectedCount) {
+                break;
+            }
+            sleep(Math.min(delayMs, TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime())));
+            delayMs = Math.min(delayMs * 2, MAX_DELAY_MS);
+        }
+        return client.getMessages().execute();
+    }
+
+    private static CompletableFuture<Response<ResponseBody>> enqueue(Call<ResponseBody> call) {
+        CompletableFuture<Response<ResponseBody>> pendingResponse = new CompletableFuture<>();
+        call.enqueue(new Callback<>() {
+            @Override
+            public void onResponse(Call<ResponseBody> call, Response<ResponseBody> response) {
+                if (!pendingResponse.complete(response) && response.body() != null) {
+                    response.body().close();
+                }
+            }
+
+            @Override
+            public void onFailure(Call<ResponseBody> call, Throwable t) {
+                pendingResponse.completeExceptionally(t);
+            }
+        });
+        return pendingResponse;
+    }
+
+    /**
+     * @return the number of elements of the JSON array, or nothing if the body is not a JSON array
+     */
+    static OptionalInt countElements(ResponseBody body) {
+        if (body == null) {
+            return OptionalInt.empty();
+        }
+        try (body; JsonParser parser = JSON_FACTORY.createParser(body.byteStream())) {
+            if (parser.nextToken() != JsonToken.START_ARRAY) {
+                return OptionalInt.empty();
+            }
+            int count = 0;
+            JsonToken token;
+            while ((token = parser.nextToken()) != JsonToken.END_ARRAY) {
+                if (token == null) {
+                    return OptionalInt.empty();
+                }
+                parser.skipChildren();
+                count++;
+            }
+            return OptionalInt.of(count);
+        } catch (IOException e) {
+            return OptionalInt.empty();
+        }
+    }
+
+    private static void sleep(long ms) {
+        if (ms <= 0) {
+            return;
+        }
+        try {
+            TimeUnit.MILLISECONDS.sleep(ms);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("API probing have been interrupted!");
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package com.github.lernejo.korekto.grader.amqp;
+
+import com.github.lernejo.korekto.toolkit.misc.HumanReadableDuration;
+import org.apache.qpid.server.SystemLauncher;
+import org.apache.qpid.server.model.ConfiguredObject;
+import org.apache.qpid.server.model.SystemConfig;
+import org.apache.qpid.server.model.VirtualHostNode;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.stream.Stream;
+
+/**
+ * AMQP 0-9-1 broker (<a href="https://qpid.apache.org/components/broker-j/">Qpid Broker-J</a>) running in the grader
+ * JVM, with in-memory storage.
+ * <p>
+ * Boots far faster than {@link RabbitMqBroker} and needs no Docker engine, but has no RabbitMQ management API nor
+ * firehose tracer: parts then rely on the student server API only.
+ * All grading jobs connect as <i>guest</i>, each one in its own virtual host.
+ */
+public class EmbeddedBroker implements Broker {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(EmbeddedBroker.class);
+
+    private final SystemLauncher systemLauncher;
+    private final int amqpPort;
+    private final Path workDirectory;
+
+    private EmbeddedBroker(SystemLauncher systemLauncher, int amqpPort, Path workDirectory) {
+        this.systemLauncher = systemLauncher;
+        this.amqpPort = amqpPort;
+        this.workDirectory = workDirectory;
+    }
+
+    public static EmbeddedBroker start(int index) {
+        long startTime = System.currentTimeMillis();
+        int amqpPort = FreePorts.reserve();
+        SystemLauncher systemLauncher = new SystemLauncher();
+        try {
+            Path workDirectory = Files.createTempDirectory("korekto-broker-" + index);
+            systemLauncher.startup(Map.of(
+                SystemConfig.TYPE, "Memory",
+                SystemConfig.INITIAL_CONFIGURATION_LOCATION, EmbeddedBroker.class.getResource("/korekto-embedded-broker.json").toExternalForm(),
+                SystemConfig.STARTUP_LOGGED_TO_SYSTEM_OUT, false,
+                SystemConfig.CONTEXT, Map.of(
+                    "qpid.amqp_port", String.valueOf(amqpPort),
+                    "qpid.work_dir", workDirectory.toString())
+            ));
+            LOGGER.info("Embedded broker #" + index + " up on port " + amqpPort + " in " + HumanReadableDuration.toString(System.currentTimeMillis() - startTime));
+            return new EmbeddedBroker(systemLauncher, amqpPort, workDirectory);
+        } catch (IOException e) {
+            FreePorts.release(amqpPort);
+            throw new UncheckedIOException("Unable to create embedded broker work directory", e);
+        } catch (Exception e) {
+            FreePorts.release(amqpPort);
+            throw new IllegalStateException("Unable to start embedded broker", e);
+        }
+    }
+
+    @Override
+    public int amqpPort() {
+        return amqpPort;
+    }
+
+    @Override
+    public VirtualHost createVirtualHost() {
+        String name = "korekto-" + UUID.randomUUID();
+        org.apache.qpid.server.model.Broker<?> broker = systemLauncher.getSystemConfig().getContainer(org.apache.qpid.server.model.Broker.class);
+        ConfiguredObject<?> node = broker.createChild(VirtualHostNode.class, Map.of(
+            ConfiguredObject.NAME, name,
+            ConfiguredObject.TYPE, "Memory",
+            VirtualHostNode.VIRTUALHOST_INITIAL_CONFIGURATION, "{\"type\": \"Memory\"}"));
+        return new VirtualHost(name, "guest", "guest", node::delete);
+    }
+
+    @Override
+    public Optional<RabbitMqManagementApi> managementApi() {
+        return Optional.empty();
+    }
+
+    @Override
+    public boolean tracesPublishes() {
+        return false;
+    }
+
+    @Override
+    public void stop() {
+        systemLauncher.shutdown();
+        FreePorts.release(amqpPort);
+        try (Stream<Path> paths = Files.walk(workDirectory)) {
+            for (Path path : paths.sorted(Comparator.reverseOrder()).toList()) {
+                Files.delete(path);
+            }
+        } catch (IOException e) {
+            LOGGER.warn("Unable to delete embedded broker work directory " + workDirectory + ": " + e.getMessage());
+        }
+    }
+}
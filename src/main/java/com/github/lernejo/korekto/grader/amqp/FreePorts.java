@@ -0,0 +1,43 @@
+package com.github.lernejo.korekto.grader.amqp;
+
+import com.github.lernejo.korekto.toolkit.misc.SubjectForToolkitInclusion;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Hands out local ports that are free at reservation time and not already reserved by another grading job.
+ */
+@SubjectForToolkitInclusion
+public class FreePorts {
+
+    private static final Set<Integer> RESERVED_PORTS = new HashSet<>();
+
+    public static synchronized int reserve() {
+        while (true) {
+            int port = findFreePort();
+            if (RESERVED_PORTS.add(port)) {
+                return port;
+            }
+        }
+    }
+
+    public static synchronized void release(int port) {
+        RESERVED_PORTS.remove(port);
+    }
+
+    private static int findFreePort() {
+        try (ServerSocket socket = new ServerSocket()) {
+            // must be set before binding to have any effect
+            socket.setReuseAddress(true);
+            socket.bind(new InetSocketAddress(0));
+            return socket.getLocalPort();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to find a free port", e);
+        }
+    }
+}
@@ -0,0 +1,38 @@
+package com.github.lernejo.korekto.grader.amqp;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Optional;
+
+/**
+ * Reads the commit checked out in a Git repository, straight from the <i>.git</i> directory.
+ */
+public class GitHead {
+
+    public static Optional<String> commit(Path repositoryRoot) {
+        Path gitDirectory = repositoryRoot.resolve(".git");
+        try {
+            String head = Files.readString(gitDirectory.resolve("HEAD"), StandardCharsets.UTF_8).trim();
+            if (!head.startsWith("ref: ")) {
+                return Optional.of(head);
+            }
+            String ref = head.substring("ref: ".length());
+            Path refFile = gitDirectory.resolve(ref);
+            if (Files.exists(refFile)) {
+                return Optional.of(Files.readString(refFile, StandardCharsets.UTF_8).trim());
+            }
+            Path packedRefs = gitDirectory.resolve("packed-refs");
+            if (Files.exists(packedRefs)) {
+                return Files.readAllLines(packedRefs, StandardCharsets.UTF_8).stream()
+                    .filter(line -> line.endsWith(" " + ref) && !line.startsWith("#") && !line.startsWith("^"))
+                    .map(line -> line.substring(0, line.indexOf(' ')))
+                    .findFirst();
+            }
+            return Optional.empty();
+        } catch (IOException e) {
+            return Optional.empty();
+        }
+    }
+}
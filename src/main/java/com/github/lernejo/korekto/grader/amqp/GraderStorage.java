@@ -0,0 +1,121 @@
+package com.github.lernejo.korekto.grader.amqp;
+
+import com.github.lernejo.korekto.toolkit.GradingContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Local directory where the grader keeps data between runs (<code>-Dcache_dir</code>, defaults to <i>~/.korekto/amqp-grader</i>).
+ */
+public class GraderStorage {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(GraderStorage.class);
+
+    private static final Path ROOT = Paths.get(System.getProperty("cache_dir", Paths.get(System.getProperty("user.home"), ".korekto", "amqp-grader").toString()));
+
+    private static String graderVersion;
+
+    /**
+     * Deletes files not modified for <code>maxAge</code>, and the least recently modified ones beyond <code>maxEntries</code>.
+     */
+    public static void evict(Path directory, Duration maxAge, int maxEntries) {
+        Instant oldestAllowed = Instant.now().minus(maxAge);
+        try (Stream<Path> files = Files.list(directory)) {
+            List<Path> entries = files
+                .sorted(Comparator.comparing(GraderStorage::lastModified).reversed())
+                .toList();
+            for (int i = 0; i < entries.size(); i++) {
+                Path entry = entries.get(i);
+                if (i >= maxEntries || lastModified(entry).isBefore(oldestAllowed)) {
+                    Files.deleteIfExists(entry);
+                }
+            }
+        } catch (IOException | UncheckedIOException e) {
+            LOGGER.warn("Unable to evict entries of " + directory + ": " + e.getMessage());
+        }
+    }
+
+    private static Instant lastModified(Path path) {
+        try {
+            return Files.getLastModifiedTime(path).toInstant();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public static String sha256(String value) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(value.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public static Path directory(String name) {
+        Path directory = ROOT.resolve(name);
+        try {
+            Files.createDirectories(directory);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to create directory " + directory, e);
+        }
+        return directory;
+    }
+
+    /**
+     * @return version of the Korekto toolkit, from its manifest or else from the name of its jar
+     */
+    public static String toolkitVersion() {
+        String version = GradingContext.class.getPackage().getImplementationVersion();
+        if (version != null) {
+            return version;
+        }
+        return String.valueOf(GradingContext.class.getProtectionDomain().getCodeSource().getLocation());
+    }
+
+    /**
+     * Changes whenever the grader code changes: hash of the grader jar, or of its classes when not packaged.
+     */
+    public static synchronized String graderVersion() {
+        if (graderVersion == null) {
+            try {
+                Path codeSource = Paths.get(AmqpGrader.class.getProtectionDomain().getCodeSource().getLocation().toURI());
+                MessageDigest digest = MessageDigest.getInstance("SHA-256");
+                if (Files.isDirectory(codeSource)) {
+                    List<Path> classFiles;
+                    try (Stream<Path> files = Files.walk(codeSource)) {
+                        classFiles = files.filter(p -> p.toString().endsWith(".class")).sorted().toList();
+                    }
+                    for (Path classFile : classFiles) {
+                        digest.update(codeSource.relativize(classFile).toString().getBytes());
+                        digest.update(Files.readAllBytes(classFile));
+                    }
+                } else {
+                    try (InputStream jar = Files.newInputStream(codeSource)) {
+                        digest.update(jar.readAllBytes());
+                    }
+                }
+                graderVersion = HexFormat.of().formatHex(digest.digest());
+            } catch (IOException | URISyntaxException | NoSuchAlgorithmException e) {
+                throw new IllegalStateException("Unable to compute grader version", e);
+            }
+        }
+        return graderVersion;
+    }
+}
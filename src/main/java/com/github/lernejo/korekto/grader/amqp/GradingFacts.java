@@ -0,0 +1,53 @@
+package com.github.lernejo.korekto.grader.amqp;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Facts about the graded project, established by the part graders and shared with the following ones.
+ * <p>
+ * Parts requiring a fact known not to hold are not graded, see {@link com.github.lernejo.korekto.grader.amqp.parts.DependentPartGrader}.
+ */
+public class GradingFacts {
+
+    private final Map<Fact, Boolean> facts = new EnumMap<>(Fact.class);
+
+    public synchronized void establish(Fact fact, boolean holds) {
+        facts.put(fact, holds);
+    }
+
+    public synchronized Optional<Boolean> get(Fact fact) {
+        return Optional.ofNullable(facts.get(fact));
+    }
+
+    /**
+     * @return true only if the fact was established as not holding, an unknown fact is not refuted
+     */
+    public synchronized boolean isRefuted(Fact fact) {
+        return Boolean.FALSE.equals(facts.get(fact));
+    }
+
+    public enum Fact {
+        BUILT(context -> "Not trying to start server as the grader could not build the project"),
+        COMPILED(context -> "Not trying to start server as compilation failed"),
+        CLIENT_MODULE(context -> "No *client* module defined in the root *pom.xml*"),
+        SERVER_BOOTS(context -> "Server failed to start within " + TimeUnit.MILLISECONDS.toSeconds(context.serverStartTimeout() + 999L) + " sec."),
+        ;
+
+        private final Function<LaunchingContext, String> refutation;
+
+        Fact(Function<LaunchingContext, String> refutation) {
+            this.refutation = refutation;
+        }
+
+        /**
+         * @return the comment given to a part requiring this fact, when it does not hold
+         */
+        public String refutation(LaunchingContext context) {
+            return refutation.apply(context);
+        }
+    }
+}
@@ -0,0 +1,159 @@
+package com.github.lernejo.korekto.grader.amqp;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+/**
+ * Duration histograms of the grading phases, accumulated over all the students graded by a grader.
+ * <p>
+ * When the grader is closed, they are written as <i>metrics.json</i> and <i>metrics.prom</i> (Prometheus text format)
+ * in <code>-Dmetrics_dir</code> (defaults to the <i>metrics</i> directory of the {@link GraderStorage}).
+ */
+public class GradingMetrics {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(GradingMetrics.class);
+
+    static final double[] BUCKETS_SECONDS = {0.05D, 0.1D, 0.25D, 0.5D, 1D, 2.5D, 5D, 10D, 30D, 60D, 120D, 300D};
+
+    private final Map<String, Timer> timers = new ConcurrentSkipListMap<>();
+
+    /**
+     * @param tags alternating tag names and values
+     */
+    public Timer timer(String name, String... tags) {
+        Map<String, String> tagMap = new LinkedHashMap<>();
+        for (int i = 0; i + 1 < tags.length; i += 2) {
+            tagMap.put(tags[i], tags[i + 1]);
+        }
+        // name first, so that timers of a same metric are exported together
+        return timers.computeIfAbsent(name + "\u0000" + labels(tagMap, null), k -> new Timer(name, tagMap));
+    }
+
+    public void export() {
+        Path directory = System.getProperty("metrics_dir") != null ? Paths.get(System.getProperty("metrics_dir")) : GraderStorage.directory("metrics");
+        try {
+            Files.createDirectories(directory);
+            ObjectMapper objectMapper = new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT);
+            objectMapper.writeValue(directory.resolve("metrics.json").toFile(), toJson());
+            Files.writeString(directory.resolve("metrics.prom"), toPrometheus(), StandardCharsets.UTF_8);
+            LOGGER.info("Grading metrics written in " + directory);
+        } catch (IOException e) {
+            LOGGER.warn("Unable to write grading metrics in " + directory + ": " + e.getMessage());
+        }
+    }
+
+    List<Map<String, Object>> toJson() {
+        return timers.values().stream().map(Timer::summary).collect(Collectors.toList());
+    }
+
+    String toPrometheus() {
+        StringBuilder text = new StringBuilder();
+        String previousName = null;
+        for (Timer timer : timers.values()) {
+            if (!timer.name.equals(previousName)) {
+                text.append("# TYPE ").append(timer.name).append(" histogram\n");
+                previousName = timer.name;
+            }
+            List<Long> samples = timer.samples();
+            for (double bucket : BUCKETS_SECONDS) {
+                long count = samples.stream().filter(s -> s <= bucket * 1000D).count();
+                text.append(timer.name).append("_bucket").append(labels(timer.tags, format(bucket))).append(' ').append(count).append('\n');
+            }
+            text.append(timer.name).append("_bucket").append(labels(timer.tags, "+Inf")).append(' ').append(samples.size()).append('\n');
+            text.append(timer.name).append("_sum").append(labels(timer.tags, null)).append(' ').append(format(sum(samples) / 1000D)).append('\n');
+            text.append(timer.name).append("_count").append(labels(timer.tags, null)).append(' ').append(samples.size()).append('\n');
+        }
+        return text.toString();
+    }
+
+    /**
+     * Nearest-rank percentile of non-empty sorted samples.
+     */
+    public static long percentile(List<Long> sorted, double percentile) {
+        return sorted.get(Math.max(0, (int) Math.ceil(percentile * sorted.size()) - 1));
+    }
+
+    private static String labels(Map<String, String> tags, String le) {
+        List<String> labels = new ArrayList<>();
+        tags.forEach((k, v) -> labels.add(k + "=\"" + v.replace("\\", "\\\\").replace("\"", "\\\"") + "\""));
+        if (le != null) {
+            labels.add("le=\"" + le + "\"");
+        }
+        return labels.isEmpty() ? "" : labels.stream().collect(Collectors.joining(",", "{", "}"));
+    }
+
+    private static String format(double value) {
+        return String.format(Locale.ROOT, "%.3f", value);
+    }
+
+    private static long sum(List<Long> samples) {
+        return samples.stream().mapToLong(Long::longValue).sum();
+    }
+
+    public static class Timer {
+        private final String name;
+        private final Map<String, String> tags;
+        private final List<Long> samples = new ArrayList<>();
+
+        private Timer(String name, Map<String, String> tags) {
+            this.name = name;
+            this.tags = tags;
+        }
+
+        public synchronized void record(long millis) {
+            samples.add(millis);
+        }
+
+        public <T> T time(Supplier<T> task) {
+            long startTime = System.currentTimeMillis();
+            try {
+                return task.get();
+            } finally {
+                record(System.currentTimeMillis() - startTime);
+            }
+        }
+
+        synchronized List<Long> samples() {
+            return samples.stream().sorted().toList();
+        }
+
+        /**
+         * @return samples in recording order
+         */
+        synchronized List<Long> recorded() {
+            return List.copyOf(samples);
+        }
+
+        private Map<String, Object> summary() {
+            List<Long> sorted = samples();
+            Map<String, Object> summary = new LinkedHashMap<>();
+            summary.put("name", name);
+            summary.put("tags", tags);
+            summary.put("count", sorted.size());
+            summary.put("sum_seconds", sum(sorted) / 1000D);
+            if (!sorted.isEmpty()) {
+                summary.put("p50_seconds", percentile(sorted, 0.5D) / 1000D);
+                summary.put("p95_seconds", percentile(sorted, 0.95D) / 1000D);
+                summary.put("p99_seconds", percentile(sorted, 0.99D) / 1000D);
+                summary.put("max_seconds", sorted.get(sorted.size() - 1) / 1000D);
+            }
+            return summary;
+        }
+    }
+}
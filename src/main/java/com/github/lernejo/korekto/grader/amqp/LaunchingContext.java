@@ -1,5 +1,8 @@
 package com.github.lernejo.korekto.grader.amqp;
 
+import com.github.lernejo.korekto.grader.amqp.parts.ProjectBuild;
+import com.github.lernejo.korekto.grader.amqp.parts.ResourceLimits;
+import com.github.lernejo.korekto.grader.amqp.parts.ServerSession;
 import com.github.lernejo.korekto.toolkit.GradingConfiguration;
 import com.github.lernejo.korekto.toolkit.GradingContext;
 import com.github.lernejo.korekto.toolkit.partgrader.MavenContext;
@@ -7,26 +10,201 @@ import com.rabbitmq.client.ConnectionFactory;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 
-public class LaunchingContext extends GradingContext implements MavenContext {
-    public final Integer rabbitPort;
+public class LaunchingContext extends GradingContext implements MavenContext, AutoCloseable {
+    public int serverPort;
+    public ChatApiClient client;
+    public ChatApiProbe probe;
+    public ServerSession serverSession;
+    public ResourceLimits limits;
+    public final GradingFacts facts = new GradingFacts();
     public final long SERVER_START_TIMEOUT = Long.valueOf(System.getProperty("server_start_timeout", "40"));
     public final long QUEUE_READ_TIMEOUT = Long.valueOf(System.getProperty("queue_read_timeout", "4"));
+    private final BrokerPool brokerPool;
+    private final StageScheduler stageScheduler;
+    public final AdaptiveTimeouts timeouts;
+    public final GradingMetrics metrics;
+    private Long serverStartTimeout;
+    private Long queueReadTimeout;
+    private BrokerPool.Lease brokerLease;
+    private VirtualHost virtualHost;
+    private QueueMonitor queueMonitor;
+    private ProjectBuild build;
     private boolean compilationFailed;
     private boolean testFailed;
     public List<String> modules = new ArrayList<>();
+    private final List<String> transientFailures = new ArrayList<>();
 
-    public LaunchingContext(GradingConfiguration configuration, Integer rabbitPort) {
+    public LaunchingContext(GradingConfiguration configuration, BrokerPool brokerPool, StageScheduler stageScheduler, AdaptiveTimeouts timeouts, GradingMetrics metrics) {
         super(configuration);
-        this.rabbitPort = rabbitPort;
+        this.timeouts = timeouts;
+        this.metrics = metrics;
+        this.brokerPool = brokerPool;
+        this.stageScheduler = stageScheduler;
     }
 
+    /**
+     * Reserves the port of the student server, and the components bound to it, when the grading actually starts.
+     * The port is given back with {@link #releaseServerPort()}.
+     */
+    public void reserveServerPort() {
+        this.serverPort = FreePorts.reserve();
+        this.serverSession = new ServerSession(serverPort, metrics);
+        this.limits = new ResourceLimits("korekto-" + serverPort);
+        this.client = ChatApiClient.create(serverPort);
+        this.probe = new ChatApiProbe(client);
+    }
+
+    public void releaseServerPort() {
+        if (serverPort != 0) {
+            FreePorts.release(serverPort);
+        }
+    }
+
+    /**
+     * Builds the student project on first call, the outcome is shared by all parts.
+     * The build holds a {@link StageScheduler.Stage#BUILD} slot.
+     */
+    public synchronized ProjectBuild build() {
+        if (build == null) {
+            build = stageScheduler.run(StageScheduler.Stage.BUILD, () -> ProjectBuild.run(this));
+            modules = build.modules();
+        }
+        return build;
+    }
+
+    /**
+     * Server start timeout of this grading job in milliseconds, {@link #SERVER_START_TIMEOUT} being its upper bound on an idle machine.
+     */
+    public synchronized long serverStartTimeout() {
+        if (serverStartTimeout == null) {
+            serverStartTimeout = timeouts.timeoutMillis(AdaptiveTimeouts.Latency.SERVER_START, TimeUnit.SECONDS.toMillis(SERVER_START_TIMEOUT));
+        }
+        return serverStartTimeout;
+    }
+
+    /**
+     * Queue read timeout of this grading job in milliseconds, {@link #QUEUE_READ_TIMEOUT} being its upper bound on an idle machine.
+     */
+    public synchronized long queueReadTimeout() {
+        if (queueReadTimeout == null) {
+            queueReadTimeout = timeouts.timeoutMillis(AdaptiveTimeouts.Latency.MESSAGE_CONSUMPTION, TimeUnit.SECONDS.toMillis(QUEUE_READ_TIMEOUT));
+        }
+        return queueReadTimeout;
+    }
+
+    /**
+     * Connections are scoped to a virtual host created for this grading job only.
+     */
     public ConnectionFactory newConnectionFactory() {
+        VirtualHost virtualHost = virtualHost();
         ConnectionFactory factory = new ConnectionFactory();
-        factory.setPort(rabbitPort);
+        factory.setPort(rabbitPort());
+        factory.setVirtualHost(virtualHost.name());
+        factory.setUsername(virtualHost.username());
+        factory.setPassword(virtualHost.password());
         return factory;
     }
 
+    /**
+     * System properties pointing a Spring application launched for this grading job to its virtual host.
+     */
+    public List<String> springRabbitProperties() {
+        VirtualHost virtualHost = virtualHost();
+        return List.of(
+            "-Dspring.rabbitmq.port=" + rabbitPort(),
+            "-Dspring.rabbitmq.virtual-host=" + virtualHost.name(),
+            "-Dspring.rabbitmq.username=" + virtualHost.username(),
+            "-Dspring.rabbitmq.password=" + virtualHost.password()
+        );
+    }
+
+    /**
+     * The broker is only acquired when first needed, so that it can boot while previous parts are graded.
+     */
+    public int rabbitPort() {
+        return broker().amqpPort();
+    }
+
+    private synchronized Broker broker() {
+        if (brokerLease == null) {
+            try {
+                brokerLease = brokerPool.acquire();
+            } catch (RuntimeException e) {
+                markTransientFailure("Broker unavailable: " + e.getMessage());
+                throw e;
+            }
+        }
+        return brokerLease.broker;
+    }
+
+    private synchronized VirtualHost virtualHost() {
+        if (virtualHost == null) {
+            try {
+                virtualHost = broker().createVirtualHost();
+            } catch (RuntimeException e) {
+                markTransientFailure("Virtual host creation failed: " + e.getMessage());
+                throw e;
+            }
+        }
+        return virtualHost;
+    }
+
+    /**
+     * Records a failure which may not happen on another run, such as an infrastructure error,
+     * so that grades depending on it are neither memoized nor cached.
+     */
+    public synchronized void markTransientFailure(String reason) {
+        transientFailures.add(reason);
+    }
+
+    /**
+     * Records a timeout of a fixed duration, transient only when the machine is loaded.
+     */
+    public void markTimeout(String reason) {
+        if (timeouts.loadFactor() > 1.0D) {
+            markTransientFailure(reason + " under load");
+        }
+    }
+
+    /**
+     * Records a timeout of an adaptive duration, transient when the machine is loaded or when the timeout was shortened
+     * from past latencies, a student failing within the configured timeout being expected to fail on another run.
+     */
+    public void markTimeout(String reason, AdaptiveTimeouts.Latency latency) {
+        long ceilingMillis = TimeUnit.SECONDS.toMillis(latency == AdaptiveTimeouts.Latency.SERVER_START ? SERVER_START_TIMEOUT : QUEUE_READ_TIMEOUT);
+        if (timeouts.isShortened(latency, ceilingMillis)) {
+            markTransientFailure(reason + " with a shortened timeout");
+        } else {
+            markTimeout(reason);
+        }
+    }
+
+    /**
+     * @return the number of transient failures recorded so far, to tell whether a part met any
+     */
+    public synchronized int transientFailureCount() {
+        return transientFailures.size();
+    }
+
+    /**
+     * Monitors the queues of this grading job virtual host.
+     */
+    public synchronized QueueMonitor queueMonitor() {
+        if (queueMonitor == null) {
+            queueMonitor = new QueueMonitor(broker().managementApi(), virtualHost().name());
+        }
+        return queueMonitor;
+    }
+
+    /**
+     * @return true if publishes in this grading job virtual host are traced, see {@link PublishSpy}
+     */
+    public boolean tracesPublishes() {
+        return broker().tracesPublishes();
+    }
+
     @Override
     public boolean hasCompilationFailed() {
         return compilationFailed;
@@ -40,10 +218,28 @@ public class LaunchingContext extends GradingContext implements MavenContext {
     @Override
     public void markAsCompilationFailed() {
         compilationFailed = true;
+        facts.establish(GradingFacts.Fact.COMPILED, false);
     }
 
     @Override
     public void markAsTestFailed() {
         testFailed = true;
     }
+
+    @Override
+    public synchronized void close() {
+        if (serverSession != null) {
+            serverSession.close();
+            limits.close();
+        }
+        queueMonitor = null;
+        if (virtualHost != null) {
+            virtualHost.close();
+            virtualHost = null;
+        }
+        if (brokerLease != null) {
+            brokerLease.close();
+            brokerLease = null;
+        }
+    }
 }
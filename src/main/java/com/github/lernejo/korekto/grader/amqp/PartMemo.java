@@ -0,0 +1,83 @@
+package com.github.lernejo.korekto.grader.amqp;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.lernejo.korekto.grader.amqp.parts.MemoizablePartGrader;
+import com.github.lernejo.korekto.toolkit.GradePart;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.function.Supplier;
+
+/**
+ * Grades of single parts, keyed by the content of the source trees each part depends on, along with the grader and
+ * toolkit versions and the timeout settings, as the {@link ResultCache}.
+ * <p>
+ * A commit touching only the client module reuses the grade of parts depending on the server only.
+ * Grades computed while a {@link LaunchingContext#markTransientFailure(String) transient failure} occurred are not memoized.
+ * Shares the <code>force_regrade</code> and age settings of the {@link ResultCache}, the oldest entries beyond
+ * <code>-Dpart_memo_max_entries=4000</code> are evicted, and it can be disabled with <code>-Dpart_memo=false</code>.
+ */
+public class PartMemo {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(PartMemo.class);
+
+    private final boolean forceRegrade = Boolean.parseBoolean(System.getProperty("force_regrade", "false"));
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final Path directory;
+
+    public PartMemo() {
+        this(Boolean.parseBoolean(System.getProperty("part_memo", "true")) ? GraderStorage.directory("parts") : null);
+    }
+
+    /**
+     * @param directory where grades are kept, or <code>null</code> to disable memoization
+     */
+    PartMemo(Path directory) {
+        this.directory = directory;
+        if (directory != null) {
+            GraderStorage.evict(directory,
+                Duration.ofDays(Long.parseLong(System.getProperty("result_cache_max_age_days", "30"))),
+                Integer.parseInt(System.getProperty("part_memo_max_entries", "4000")));
+        }
+    }
+
+    /**
+     * @param grading grades the part when no memoized grade is found
+     */
+    public GradePart grade(LaunchingContext context, MemoizablePartGrader grader, Supplier<GradePart> grading) {
+        if (directory == null) {
+            return grading.get();
+        }
+        String sourcesHash = SourceTrees.hash(context.getExercise().getRoot(), grader.sourceTrees(context));
+        Path entry = directory.resolve(ResultCache.key(grader.name() + ":" + sourcesHash) + ".json");
+        if (!forceRegrade && Files.exists(entry)) {
+            try {
+                ResultCache.CachedPart cachedPart = objectMapper.readValue(entry.toFile(), ResultCache.CachedPart.class);
+                Files.setLastModifiedTime(entry, FileTime.from(Instant.now()));
+                LOGGER.debug("Reusing memoized grade of " + grader.name());
+                grader.restore(context, cachedPart.grade());
+                return grader.result(cachedPart.comments(), cachedPart.grade());
+            } catch (IOException e) {
+                LOGGER.warn("Unable to read memoized grade " + entry + ": " + e.getMessage());
+            }
+        }
+        int transientFailures = context.transientFailureCount();
+        GradePart part = grading.get();
+        if (context.transientFailureCount() > transientFailures) {
+            LOGGER.debug("Not memoizing grade of " + grader.name() + " as it met a transient failure");
+            return part;
+        }
+        try {
+            objectMapper.writeValue(entry.toFile(), new ResultCache.CachedPart(part.getId(), part.getGrade(), part.getComments()));
+        } catch (IOException e) {
+            LOGGER.warn("Unable to memoize grade " + entry + ": " + e.getMessage());
+        }
+        return part;
+    }
+}
@@ -0,0 +1,114 @@
+package com.github.lernejo.korekto.grader.amqp;
+
+import com.rabbitmq.client.Channel;
+import com.rabbitmq.client.Connection;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Observes, as they happen, the messages published in the virtual host of a grading job.
+ * <p>
+ * Relies on the <a href="https://www.rabbitmq.com/firehose.html">firehose tracer</a>, turned on when the virtual host
+ * is created: a copy of each published message is routed to a queue of the spy, bound to <i>amq.rabbitmq.trace</i>.
+ * Can be disabled with <code>-Dpublish_spy=false</code>.
+ */
+public class PublishSpy implements AutoCloseable {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(PublishSpy.class);
+    static final boolean ENABLED = Boolean.parseBoolean(System.getProperty("publish_spy", "true"));
+    private static final String TRACE_EXCHANGE = "amq.rabbitmq.trace";
+
+    private final Connection connection;
+    private final List<Publish> publishes = new ArrayList<>();
+
+    private PublishSpy(Connection connection) {
+        this.connection = connection;
+    }
+
+    /**
+     * @return empty if disabled, if the broker does not trace publishes, or if the spy cannot connect
+     */
+    public static Optional<PublishSpy> attach(LaunchingContext context) {
+        if (!ENABLED || !context.tracesPublishes()) {
+            return Optional.empty();
+        }
+        Connection connection = null;
+        try {
+            connection = context.newConnectionFactory().newConnection();
+            PublishSpy spy = new PublishSpy(connection);
+            Channel channel = connection.createChannel();
+            String queue = channel.queueDeclare().getQueue();
+            channel.queueBind(queue, TRACE_EXCHANGE, "publish.#");
+            channel.basicConsume(queue, true, (tag, delivery) -> spy.record(new String(delivery.getBody(), StandardCharsets.UTF_8)), tag -> {
+            });
+            return Optional.of(spy);
+        } catch (IOException | TimeoutException e) {
+            LOGGER.warn("Unable to attach publish spy: " + e.getMessage());
+            closeQuietly(connection);
+            return Optional.empty();
+        }
+    }
+
+    private synchronized void record(String body) {
+        publishes.add(new Publish(System.nanoTime(), body));
+        notifyAll();
+    }
+
+    /**
+     * Returns as soon as <code>count</code> messages were published, or after at most <code>timeoutMs</code>.
+     *
+     * @return messages published so far, in publish order
+     */
+    public synchronized List<Publish> awaitPublishes(int count, long timeoutMs) {
+        long deadline = System.currentTimeMillis() + timeoutMs;
+        try {
+            while (publishes.size() < count && System.currentTimeMillis() < deadline) {
+                wait(Math.max(1L, deadline - System.currentTimeMillis()));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return List.copyOf(publishes);
+    }
+
+    @Override
+    public void close() {
+        closeQuietly(connection);
+    }
+
+    private static void closeQuietly(Connection connection) {
+        if (connection != null) {
+            try {
+                connection.close();
+            } catch (IOException e) {
+                LOGGER.debug("Unable to close publish spy connection: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * @param nanoTime {@link System#nanoTime()} when the copy of the message reached the spy
+     */
+    public record Publish(long nanoTime, String body) {
+
+        public long millisSince(long nanoTime) {
+            return TimeUnit.NANOSECONDS.toMillis(this.nanoTime - nanoTime);
+        }
+
+        /**
+         * @return true if the body of the message is the given text, possibly serialized as a JSON string
+         */
+        public boolean carries(String text) {
+            String content = body.strip();
+            return content.equals(text) || content.equals('"' + text + '"');
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package com.github.lernejo.korekto.grader.amqp;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**
+ * State of a queue, as seen by the RabbitMQ management API.
+ * <p>
+ * Counters are refreshed by the broker every <i>collect_statistics_interval</i>, and <code>messageStats</code> is
+ * absent until some message went through the queue.
+ */
+@JsonIgnoreProperties(ignoreUnknown = true)
+public record QueueInfo(
+    long messages,
+    @JsonProperty("messages_unacknowledged") long messagesUnacknowledged,
+    long consumers,
+    @JsonProperty("message_stats") MessageStats messageStats) {
+
+    public long published() {
+        return messageStats == null ? 0L : messageStats.publish();
+    }
+
+    public long delivered() {
+        return messageStats == null ? 0L : messageStats.deliverGet();
+    }
+
+    public long acknowledged() {
+        return messageStats == null ? 0L : messageStats.ack();
+    }
+
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    public record MessageStats(
+        long publish,
+        @JsonProperty("deliver_get") long deliverGet,
+        long ack,
+        @JsonProperty("publish_details") Rate publishDetails,
+        @JsonProperty("ack_details") Rate ackDetails) {
+    }
+
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    public record Rate(double rate) {
+    }
+}
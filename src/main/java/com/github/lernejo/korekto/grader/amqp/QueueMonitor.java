@@ -0,0 +1,92 @@
+package com.github.lernejo.korekto.grader.amqp;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import retrofit2.Response;
+
+import java.io.IOException;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Observes the queues of a virtual host through the RabbitMQ management API.
+ * <p>
+ * Knowing on the broker side that messages were consumed and acknowledged is cheaper than polling the student server,
+ * and tells apart messages not consumed from messages consumed but not exposed.
+ */
+public class QueueMonitor {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(QueueMonitor.class);
+    private static final long POLL_DELAY_MS = 50L;
+
+    private final Optional<RabbitMqManagementApi> api;
+    private final String virtualHost;
+
+    /**
+     * @param api empty when the broker has no management API, the state of queues being then unknown
+     */
+    public QueueMonitor(Optional<RabbitMqManagementApi> api, String virtualHost) {
+        this.api = api;
+        this.virtualHost = virtualHost;
+    }
+
+    /**
+     * @return empty if the queue does not exist or the management API cannot be reached or is not available
+     */
+    public Optional<QueueInfo> info(String queue) {
+        if (api.isEmpty()) {
+            return Optional.empty();
+        }
+        try {
+            Response<QueueInfo> response = api.get().getQueue(virtualHost, queue).execute();
+            return response.isSuccessful() ? Optional.ofNullable(response.body()) : Optional.empty();
+        } catch (IOException | RuntimeException e) {
+            LOGGER.debug("Unable to read state of queue " + queue + ": " + e.getMessage());
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * Waits until <code>count</code> more messages than in <code>before</code> have been delivered, and none is left
+     * in the queue or waiting for acknowledgement, but at most <code>timeoutMs</code>.
+     *
+     * @return the last known state of the queue
+     */
+    public Optional<QueueInfo> awaitConsumed(String queue, Optional<QueueInfo> before, int count, long timeoutMs) {
+        long expectedDelivered = before.map(QueueInfo::delivered).orElse(0L) + count;
+        long deadline = System.currentTimeMillis() + timeoutMs;
+        Optional<QueueInfo> info = info(queue);
+        while (info.isPresent() && !isConsumed(info.get(), expectedDelivered) && System.currentTimeMillis() < deadline) {
+            try {
+                TimeUnit.MILLISECONDS.sleep(POLL_DELAY_MS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+            info = info(queue);
+        }
+        return info;
+    }
+
+    private static boolean isConsumed(QueueInfo info, long expectedDelivered) {
+        return info.messages() == 0L && info.messagesUnacknowledged() == 0L && info.delivered() >= expectedDelivered;
+    }
+
+    /**
+     * @return why <code>sent</code> messages may not be displayed by the student server, from the broker point of view
+     */
+    public static Optional<String> diagnose(String queue, Optional<QueueInfo> before, Optional<QueueInfo> after, int sent) {
+        if (after.isEmpty()) {
+            return Optional.empty();
+        }
+        QueueInfo info = after.get();
+        long published = info.published() - before.map(QueueInfo::published).orElse(0L);
+        if (published < sent) {
+            return Optional.of("Only " + published + " of the " + sent + " messages were published to `" + queue + "`");
+        }
+        if (info.messages() > 0L || info.messagesUnacknowledged() > 0L) {
+            return Optional.of(info.messages() + " messages were not consumed from `" + queue + "` (" + info.consumers() + " consumers, " + info.messagesUnacknowledged() + " unacknowledged)");
+        }
+        return Optional.of("Messages were consumed from `" + queue + "`, but not exposed by GET /api/message");
+    }
+}
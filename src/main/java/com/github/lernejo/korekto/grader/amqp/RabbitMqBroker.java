@@ -0,0 +1,77 @@
+package com.github.lernejo.korekto.grader.amqp;
+
+import com.github.lernejo.korekto.toolkit.misc.Ports;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.testcontainers.containers.GenericContainer;
+
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A dockerized RabbitMQ, with its management plugin.
+ */
+public class RabbitMqBroker implements Broker {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(RabbitMqBroker.class);
+
+    private final GenericContainer genericContainer;
+    private final boolean reused;
+    private final RabbitMqManagementApi managementApi;
+
+    private RabbitMqBroker(GenericContainer genericContainer, boolean reused) {
+        this.genericContainer = genericContainer;
+        this.reused = reused;
+        this.managementApi = RabbitMqManagementApi.create(genericContainer.getMappedPort(15672));
+    }
+
+    /**
+     * @param index distinguishes brokers of the same pool, as reusable containers are matched on their configuration
+     * @param reuse keep the container alive after the grader stops, to be picked up again by the next run
+     *              (requires {@code testcontainers.reuse.enable=true} in <i>~/.testcontainers.properties</i>)
+     */
+    public static RabbitMqBroker start(int index, boolean reuse) {
+        GenericContainer genericContainer = new GenericContainer("rabbitmq:3.9.7-management-alpine");
+        genericContainer.addExposedPorts(5672, 15672);
+        genericContainer.withLabel("korekto.broker.index", String.valueOf(index));
+        // queue counters of the management API are refreshed every 5 sec. by default, too late to await consumption
+        genericContainer.withEnv("RABBITMQ_SERVER_ADDITIONAL_ERL_ARGS", "-rabbit collect_statistics_interval 100");
+        genericContainer.withReuse(reuse);
+        try {
+            genericContainer.start();
+        } catch (RuntimeException e) {
+            throw new IllegalStateException("Unable to use Docker, make sure the Docker engine is started", e);
+        }
+        LOGGER.info("Waiting for RabbitMQ #" + index + " to boot");
+        Ports.waitForPortToBeListenedTo(genericContainer.getMappedPort(5672), TimeUnit.SECONDS, 20L);
+        LOGGER.info("RabbitMQ #" + index + " up (management on http://localhost:" + genericContainer.getMappedPort(15672) + " )");
+        return new RabbitMqBroker(genericContainer, reuse);
+    }
+
+    @Override
+    public int amqpPort() {
+        return genericContainer.getMappedPort(5672);
+    }
+
+    @Override
+    public VirtualHost createVirtualHost() {
+        return VirtualHost.create(managementApi, PublishSpy.ENABLED);
+    }
+
+    @Override
+    public Optional<RabbitMqManagementApi> managementApi() {
+        return Optional.of(managementApi);
+    }
+
+    @Override
+    public boolean tracesPublishes() {
+        return PublishSpy.ENABLED;
+    }
+
+    @Override
+    public void stop() {
+        if (!reused) {
+            genericContainer.stop();
+        }
+    }
+}
@@ -0,0 +1,51 @@
+package com.github.lernejo.korekto.grader.amqp;
+
+import java.util.Map;
+
+import okhttp3.Credentials;
+import okhttp3.OkHttpClient;
+import retrofit2.Call;
+import retrofit2.Retrofit;
+import retrofit2.converter.jackson.JacksonConverterFactory;
+import retrofit2.http.Body;
+import retrofit2.http.DELETE;
+import retrofit2.http.GET;
+import retrofit2.http.PUT;
+import retrofit2.http.Path;
+
+/**
+ * Subset of the <a href="https://www.rabbitmq.com/management.html#http-api">RabbitMQ management HTTP API</a> used by the grader.
+ */
+public interface RabbitMqManagementApi {
+
+    static RabbitMqManagementApi create(int managementPort) {
+        String authorization = Credentials.basic("guest", "guest");
+        OkHttpClient httpClient = new OkHttpClient().newBuilder()
+            .addInterceptor(chain -> chain.proceed(chain.request().newBuilder().header("Authorization", authorization).build()))
+            .build();
+        return new Retrofit.Builder()
+            .baseUrl("http://localhost:" + managementPort + "/")
+            .client(httpClient)
+            .addConverterFactory(JacksonConverterFactory.create())
+            .build()
+            .create(RabbitMqManagementApi.class);
+    }
+
+    @PUT("api/vhosts/{vhost}")
+    Call<Void> createVirtualHost(@Path("vhost") String vhost, @Body Map<String, Object> definition);
+
+    @DELETE("api/vhosts/{vhost}")
+    Call<Void> deleteVirtualHost(@Path("vhost") String vhost);
+
+    @PUT("api/users/{user}")
+    Call<Void> createUser(@Path("user") String user, @Body Map<String, Object> definition);
+
+    @DELETE("api/users/{user}")
+    Call<Void> deleteUser(@Path("user") String user);
+
+    @GET("api/queues/{vhost}/{queue}")
+    Call<QueueInfo> getQueue(@Path("vhost") String vhost, @Path("queue") String queue);
+
+    @PUT("api/permissions/{vhost}/{user}")
+    Call<Void> setPermissions(@Path("vhost") String vhost, @Path("user") String user, @Body Map<String, Object> permissions);
+}
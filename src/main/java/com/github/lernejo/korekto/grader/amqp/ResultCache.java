@@ -0,0 +1,151 @@
+package com.github.lernejo.korekto.grader.amqp;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.lernejo.korekto.toolkit.GradePart;
+import com.github.lernejo.korekto.toolkit.PartGrader;
+import com.github.lernejo.korekto.toolkit.partgrader.GitHubActionsPartGrader;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Grading results of previous runs, keyed by the commit graded, the grader and toolkit versions and the timeout settings.
+ * <p>
+ * Parts whose result may change without a new commit, such as the CI status of {@link GitHubActionsPartGrader}, are
+ * not cached and graded again on each run.
+ * Runs which met a {@link LaunchingContext#markTransientFailure(String) transient failure} are not cached.
+ * <p>
+ * Entries older than <code>-Dresult_cache_max_age_days=30</code> are evicted, as are the oldest ones beyond
+ * <code>-Dresult_cache_max_entries=1000</code>.
+ * Use <code>-Dforce_regrade=true</code> to ignore cached results, or <code>-Dresult_cache=false</code> to disable the cache.
+ */
+public class ResultCache {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ResultCache.class);
+    private static final TypeReference<List<CachedPart>> CACHED_PARTS_TYPE = new TypeReference<>() {
+    };
+    private static final List<String> TIMEOUT_PROPERTIES = List.of("server_start_timeout", "queue_read_timeout", "adaptive_timeouts", "PROCESS_READ_TIMEOUT");
+
+    private final boolean forceRegrade = Boolean.parseBoolean(System.getProperty("force_regrade", "false"));
+    private final Duration maxAge = Duration.ofDays(Long.parseLong(System.getProperty("result_cache_max_age_days", "30")));
+    private final int maxEntries = Integer.parseInt(System.getProperty("result_cache_max_entries", "1000"));
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final Path directory;
+
+    public ResultCache() {
+        this(Boolean.parseBoolean(System.getProperty("result_cache", "true")) ? GraderStorage.directory("results") : null);
+    }
+
+    /**
+     * @param directory where results are kept, or <code>null</code> to disable the cache
+     */
+    ResultCache(Path directory) {
+        this.directory = directory;
+        if (directory != null) {
+            GraderStorage.evict(directory, maxAge, maxEntries);
+        }
+    }
+
+    /**
+     * @return false for parts graded again on each run, even for an already graded commit
+     */
+    public static boolean isCacheable(PartGrader<LaunchingContext> grader) {
+        return !(grader instanceof GitHubActionsPartGrader);
+    }
+
+    /**
+     * @return results of cacheable parts of a previous grading of the same commit, rebuilt with the given graders
+     */
+    public Optional<List<GradePart>> get(LaunchingContext context, List<? extends PartGrader<LaunchingContext>> graders) {
+        if (directory == null || forceRegrade) {
+            return Optional.empty();
+        }
+        Optional<Path> entry = entry(context).filter(Files::exists);
+        if (entry.isEmpty()) {
+            return Optional.empty();
+        }
+        try {
+            List<CachedPart> cachedParts = objectMapper.readValue(entry.get().toFile(), CACHED_PARTS_TYPE);
+            Map<String, CachedPart> cachedPartsByName = cachedParts.stream().collect(Collectors.toMap(CachedPart::name, Function.identity(), (a, b) -> b));
+            List<GradePart> parts = new ArrayList<>();
+            for (PartGrader<LaunchingContext> grader : graders) {
+                if (!isCacheable(grader)) {
+                    continue;
+                }
+                CachedPart cachedPart = cachedPartsByName.get(grader.name());
+                if (cachedPart == null) {
+                    // graded before this part was enabled
+                    return Optional.empty();
+                }
+                parts.add(grader.result(cachedPart.comments(), cachedPart.grade()));
+            }
+            Files.setLastModifiedTime(entry.get(), FileTime.from(Instant.now()));
+            return Optional.of(parts);
+        } catch (IOException e) {
+            LOGGER.warn("Unable to read cached result " + entry.get() + ": " + e.getMessage());
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * @param graders the graders, in the same order as the parts they graded
+     */
+    public void put(LaunchingContext context, List<? extends PartGrader<LaunchingContext>> graders, List<? extends GradePart> parts) {
+        if (directory == null) {
+            return;
+        }
+        if (context.transientFailureCount() > 0) {
+            LOGGER.debug("Not caching result as the grading met a transient failure");
+            return;
+        }
+        entry(context).ifPresent(entry -> {
+            List<CachedPart> cachedParts = IntStream.range(0, parts.size())
+                .filter(i -> isCacheable(graders.get(i)))
+                .mapToObj(parts::get)
+                .map(p -> new CachedPart(p.getId(), p.getGrade(), p.getComments()))
+                .toList();
+            try {
+                objectMapper.writeValue(entry.toFile(), cachedParts);
+            } catch (IOException e) {
+                LOGGER.warn("Unable to cache result " + entry + ": " + e.getMessage());
+            }
+        });
+    }
+
+    private Optional<Path> entry(LaunchingContext context) {
+        return GitHead.commit(context.getExercise().getRoot())
+            .map(commit -> directory.resolve(key(commit) + ".json"));
+    }
+
+    /**
+     * @return the key of a result computed from <code>subject</code> by this grader, with the current toolkit and timeout settings
+     */
+    static String key(String subject) {
+        return key(GraderStorage.graderVersion(), GraderStorage.toolkitVersion(), subject);
+    }
+
+    static String key(String graderVersion, String toolkitVersion, String subject) {
+        return GraderStorage.sha256(graderVersion + ":" + toolkitVersion + ":" + timeoutSettings() + ":" + subject);
+    }
+
+    private static String timeoutSettings() {
+        return TIMEOUT_PROPERTIES.stream().map(p -> p + "=" + System.getProperty(p, "")).collect(Collectors.joining(","));
+    }
+
+    public record CachedPart(String name, double grade, List<String> comments) {
+    }
+}
@@ -0,0 +1,60 @@
+package com.github.lernejo.korekto.grader.amqp;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Stream;
+
+/**
+ * Hashes the content of source trees, ignoring build outputs and VCS metadata.
+ */
+public class SourceTrees {
+
+    private static final Set<String> IGNORED_DIRECTORIES = Set.of(".git", "target", ".idea");
+
+    public static String hash(Path root, List<String> trees) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            for (String tree : trees) {
+                Path treeRoot = root.resolve(tree);
+                if (!Files.exists(treeRoot)) {
+                    digest.update(("missing:" + tree).getBytes(StandardCharsets.UTF_8));
+                    continue;
+                }
+                List<Path> files;
+                try (Stream<Path> paths = Files.walk(treeRoot)) {
+                    files = paths
+                        .filter(Files::isRegularFile)
+                        .filter(p -> !isIgnored(root.relativize(p)))
+                        .sorted()
+                        .toList();
+                }
+                for (Path file : files) {
+                    digest.update(root.relativize(file).toString().replace('\\', '/').getBytes(StandardCharsets.UTF_8));
+                    digest.update(Files.readAllBytes(file));
+                }
+            }
+            return HexFormat.of().formatHex(digest.digest());
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to hash sources of " + root, e);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static boolean isIgnored(Path relativePath) {
+        for (Path element : relativePath) {
+            if (IGNORED_DIRECTORIES.contains(element.toString())) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,59 @@
+package com.github.lernejo.korekto.grader.amqp;
+
+import com.github.lernejo.korekto.toolkit.misc.HumanReadableDuration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+import java.util.function.Supplier;
+
+/**
+ * Bounds how many students go through each grading stage at once, when students are graded concurrently.
+ * <p>
+ * Stages have different resource profiles, so that a student can be built while another one is probed.
+ * Slots of each stage are fewer than the students graded at once, so that stages actually bound them:
+ * <ul>
+ *     <li>{@link Stage#BUILD}: Maven build, CPU-bound (<code>-Dpipeline_build_slots</code>, defaults to half the grading parallelism)</li>
+ *     <li>{@link Stage#RUNTIME}: student server and client running against a broker (<code>-Dpipeline_runtime_slots</code>, defaults to the rest of the grading parallelism)</li>
+ * </ul>
+ */
+public class StageScheduler {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(StageScheduler.class);
+
+    private final Map<Stage, Semaphore> slots = new EnumMap<>(Stage.class);
+
+    /**
+     * @param parallelism number of students graded at once
+     */
+    public StageScheduler(int parallelism) {
+        int buildSlots = Integer.parseInt(System.getProperty("pipeline_build_slots", String.valueOf(Math.max(1, parallelism / 2))));
+        int runtimeSlots = Integer.parseInt(System.getProperty("pipeline_runtime_slots", String.valueOf(Math.max(1, parallelism - buildSlots))));
+        slots.put(Stage.BUILD, new Semaphore(buildSlots, true));
+        slots.put(Stage.RUNTIME, new Semaphore(runtimeSlots, true));
+    }
+
+    public <T> T run(Stage stage, Supplier<T> task) {
+        Semaphore semaphore = slots.get(stage);
+        long startTime = System.currentTimeMillis();
+        try {
+            semaphore.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for a " + stage + " slot", e);
+        }
+        try {
+            LOGGER.debug("Waited " + HumanReadableDuration.toString(System.currentTimeMillis() - startTime) + " for a " + stage + " slot");
+            return task.get();
+        } finally {
+            semaphore.release();
+        }
+    }
+
+    public enum Stage {
+        BUILD,
+        RUNTIME,
+    }
+}
@@ -0,0 +1,86 @@
+package com.github.lernejo.korekto.grader.amqp;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Map;
+import java.util.UUID;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import retrofit2.Call;
+import retrofit2.Response;
+
+/**
+ * Throwaway virtual host dedicated to a single grading job.
+ *
+ * @param deletion deletes the virtual host, and its user if any, from the broker
+ */
+public record VirtualHost(String name, String username, String password, Runnable deletion) implements AutoCloseable {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(VirtualHost.class);
+
+    /**
+     * Creates a RabbitMQ virtual host, with its own user, through the management API.
+     *
+     * @param tracing turns the firehose tracer of the virtual host on from its creation, see {@link PublishSpy}
+     */
+    public static VirtualHost create(RabbitMqManagementApi api, boolean tracing) {
+        String id = UUID.randomUUID().toString();
+        String name = "korekto-" + id;
+        String password = UUID.randomUUID().toString();
+        Runnable deletion = () -> {
+            // each deletion is attempted even if the other fails
+            RuntimeException failure = null;
+            try {
+                execute(api.deleteVirtualHost(name));
+            } catch (RuntimeException e) {
+                failure = e;
+            }
+            try {
+                execute(api.deleteUser(name));
+            } catch (RuntimeException e) {
+                if (failure == null) {
+                    failure = e;
+                } else {
+                    failure.addSuppressed(e);
+                }
+            }
+            if (failure != null) {
+                throw failure;
+            }
+        };
+        execute(api.createVirtualHost(name, Map.of("description", "Korekto grading job", "tracing", tracing)));
+        try {
+            execute(api.createUser(name, Map.of("password", password, "tags", "")));
+            execute(api.setPermissions(name, name, Map.of("configure", ".*", "write", ".*", "read", ".*")));
+        } catch (RuntimeException e) {
+            try {
+                deletion.run();
+            } catch (RuntimeException deletionFailure) {
+                e.addSuppressed(deletionFailure);
+            }
+            throw e;
+        }
+        return new VirtualHost(name, name, password, deletion);
+    }
+
+    @Override
+    public void close() {
+        try {
+            deletion.run();
+        } catch (RuntimeException e) {
+            LOGGER.warn("Unable to delete virtual host " + name + ": " + e.getMessage());
+        }
+    }
+
+    private static void execute(Call<Void> call) {
+        try {
+            Response<Void> response = call.execute();
+            if (!response.isSuccessful()) {
+                throw new IllegalStateException("Unexpected RabbitMQ management API response: " + response.code());
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to reach RabbitMQ management API", e);
+        }
+    }
+}
@@ -0,0 +1,161 @@
+package com.github.lernejo.korekto.grader.amqp.parts;
+
+import com.github.lernejo.korekto.grader.amqp.GraderStorage;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * <a href="https://docs.oracle.com/en/java/javase/17/vm/class-data-sharing.html">Class data sharing</a> archives of the
+ * dependency jars of student modules, shared by all the students using the same ones.
+ * <p>
+ * The JVM only maps an archive whose classpath is a prefix of the runtime one, so launched JVMs get the shared jars,
+ * sorted, before the student classes (see {@link ModuleClasspath#launchClasspath()}), and archives only hold those jars.
+ * The first launch with a given set of jars records the classes it loads, and is stopped gracefully so that the record
+ * is complete.
+ * Once it exits, an archive of those found in the jars is dumped in the background, and used by the following launches
+ * to skip loading and verifying them again.
+ * <p>
+ * Archives are kept in the <i>cds</i> directory of the {@link GraderStorage}, those not used for
+ * <code>-Dresult_cache_max_age_days=30</code> are evicted, as are the oldest files beyond <code>-Dapp_cds_max_files=30</code>.
+ * Can be disabled with <code>-Dapp_cds=false</code>.
+ */
+public class AppCds {
+
+    static final boolean ENABLED = Boolean.parseBoolean(System.getProperty("app_cds", "true"));
+    private static final Logger LOGGER = LoggerFactory.getLogger(AppCds.class);
+    private static final long RECORDING_STOP_GRACE_MS = 5000L;
+    private static final Set<String> RECORDING = ConcurrentHashMap.newKeySet();
+    private static final ExecutorService DUMPER = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "cds-dumper");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private static Path directory;
+
+    private final String key;
+    private final String jars;
+    private final Path archive;
+    private final Path classList;
+    private final Path failure;
+
+    private AppCds(String jars) {
+        this.jars = jars;
+        this.key = GraderStorage.sha256(System.getProperty("java.home") + ":" + System.getProperty("java.version") + ":" + jars);
+        Path directory = directory();
+        this.archive = directory.resolve(key + ".jsa");
+        this.classList = directory.resolve(key + ".classlist");
+        this.failure = directory.resolve(key + ".failed");
+    }
+
+    /**
+     * Evicted on first use.
+     */
+    private static synchronized Path directory() {
+        if (directory == null) {
+            directory = GraderStorage.directory("cds");
+            GraderStorage.evict(directory,
+                Duration.ofDays(Long.parseLong(System.getProperty("result_cache_max_age_days", "30"))),
+                Integer.parseInt(System.getProperty("app_cds_max_files", "30")));
+        }
+        return directory;
+    }
+
+    /**
+     * @return options to add to the command line of a JVM launched with the {@link ModuleClasspath#launchClasspath()} of the given classpath
+     */
+    public static Launch launch(ModuleClasspath classpath) {
+        List<String> sharedJars = classpath.sharedJars();
+        if (!ENABLED || sharedJars.isEmpty()) {
+            return new Launch(List.of(), null);
+        }
+        return new AppCds(String.join(File.pathSeparator, sharedJars)).launch();
+    }
+
+    private Launch launch() {
+        if (Files.exists(archive)) {
+            try {
+                // eviction is based on last use
+                Files.setLastModifiedTime(archive, FileTime.from(Instant.now()));
+            } catch (IOException e) {
+                LOGGER.debug("Unable to touch " + archive + ": " + e.getMessage());
+            }
+            return new Launch(List.of("-XX:SharedArchiveFile=" + archive, "-Xlog:cds=off", "-Xlog:class+path=off"), null);
+        }
+        if (Files.exists(failure) || !RECORDING.add(key)) {
+            return new Launch(List.of(), null);
+        }
+        return new Launch(List.of("-XX:DumpLoadedClassList=" + classList), this);
+    }
+
+    private void dump() {
+        Path temporaryArchive = archive.resolveSibling(key + ".jsa.tmp");
+        try {
+            Process process = new ProcessBuilder(
+                Paths.get(System.getProperty("java.home")).resolve("bin").resolve("java").toString(),
+                "-Xshare:dump",
+                "-XX:SharedClassListFile=" + classList,
+                "-XX:SharedArchiveFile=" + temporaryArchive,
+                "-cp", jars)
+                .redirectErrorStream(true)
+                .redirectOutput(ProcessBuilder.Redirect.DISCARD)
+                .start();
+            if (process.waitFor() == 0 && Files.exists(temporaryArchive)) {
+                Files.move(temporaryArchive, archive, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+                LOGGER.debug("Dumped class data sharing archive " + archive);
+            } else {
+                Files.deleteIfExists(temporaryArchive);
+                Files.createFile(failure);
+                LOGGER.warn("Unable to dump class data sharing archive from " + classList + ", exit code: " + process.exitValue());
+            }
+        } catch (IOException e) {
+            LOGGER.warn("Unable to dump class data sharing archive from " + classList + ": " + e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            RECORDING.remove(key);
+        }
+    }
+
+    /**
+     * @param recording set when the launched JVM records its loaded classes, the archive being dumped when it exits
+     */
+    public record Launch(List<String> jvmOptions, AppCds recording) {
+
+        public void started(Process process) {
+            if (recording != null) {
+                process.onExit().thenRunAsync(recording::dump, DUMPER);
+            }
+        }
+
+        /**
+         * To call when the process could not be started.
+         */
+        public void failed() {
+            if (recording != null) {
+                RECORDING.remove(recording.key);
+            }
+        }
+
+        /**
+         * @return how long the launched JVM is given to exit once asked to stop, a recording one writing its class list on exit
+         */
+        public long stopGracePeriodMs() {
+            return recording != null ? RECORDING_STOP_GRACE_MS : 0L;
+        }
+    }
+}
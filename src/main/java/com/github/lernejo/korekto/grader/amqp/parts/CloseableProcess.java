@@ -2,11 +2,20 @@ package com.github.lernejo.korekto.grader.amqp.parts;
 
 import com.github.lernejo.korekto.toolkit.misc.SubjectForToolkitInclusion;
 
+/**
+ * Kills the process and its descendants on close, see {@link ProcessTree}.
+ *
+ * @param gracePeriodMs how long the process is given to stop before being killed
+ */
 @SubjectForToolkitInclusion
-public record CloseableProcess(Process process) implements AutoCloseable {
+public record CloseableProcess(Process process, long gracePeriodMs) implements AutoCloseable {
+
+    public CloseableProcess(Process process) {
+        this(process, 0L);
+    }
 
     @Override
     public void close() {
-        process.destroyForcibly();
+        ProcessTree.destroy(process, gracePeriodMs);
     }
 }
@@ -0,0 +1,19 @@
+package com.github.lernejo.korekto.grader.amqp.parts;
+
+import com.github.lernejo.korekto.grader.amqp.GradingFacts;
+import com.github.lernejo.korekto.grader.amqp.LaunchingContext;
+import com.github.lernejo.korekto.toolkit.PartGrader;
+
+import java.util.List;
+
+/**
+ * Part grader that cannot give any point when one of its required facts does not hold.
+ * Such a part is not graded and gets the refutation of the first failing fact instead.
+ */
+public interface DependentPartGrader extends PartGrader<LaunchingContext> {
+
+    /**
+     * @return required facts, in the order they are checked
+     */
+    List<GradingFacts.Fact> requirements();
+}
@@ -0,0 +1,628 @@
+package com.github.lernejo.korekto.grader.amqp.parts;
+
+import com.github.lernejo.korekto.toolkit.misc.SubjectForToolkitInclusion;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Stream;
+
+/**
+ * Main class run in the grader JVM, in a disposable class loader and its own thread group, instead of a forked JVM.
+ * <p>
+ * It behaves as a {@link Process}: standard input and output of the threads of its group are routed to in-memory pipes,
+ * and it exits once its main method returned and no non-daemon thread of the group is left.
+ * <p>
+ * System properties being global to the JVM, only one main class runs in process at a time.
+ * Threads cannot be killed, so {@link #destroy()} only interrupts them, and closes the Spring contexts started by the main class.
+ * The class loader is only closed, and another main class run in process, once no thread of the group is left:
+ * until then, other clients are forked.
+ * Nothing global keeps a reference to the class loader afterwards: the Spring Boot JVM shutdown hook is removed, and the
+ * original standard streams are restored.
+ */
+@SubjectForToolkitInclusion
+public class InProcessClient extends Process {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(InProcessClient.class);
+    private static final Semaphore SLOT = new Semaphore(1);
+    private static final long DISPOSAL_WAIT_MS = 2000L;
+    private static final Set<String> EXIT_METHODS = Set.of(
+        "java/lang/System.exit(I)V",
+        "java/lang/Runtime.exit(I)V",
+        "java/lang/Runtime.halt(I)V"
+    );
+    private static volatile InProcessClient running;
+    private static InputStream originalIn;
+    private static PrintStream originalOut;
+    private static PrintStream originalErr;
+
+    private final ThreadGroup group;
+    private final URLClassLoader classLoader;
+    private final Map<String, String> previousProperties = new HashMap<>();
+    private final MemoryPipe stdin = new MemoryPipe();
+    private final MemoryPipe stdout = new MemoryPipe();
+    private final CompletableFuture<Integer> exit = new CompletableFuture<>();
+    private volatile Throwable failure;
+    private Runnable springShutdownHook;
+    private Thread springShutdownHookThread;
+
+    private InProcessClient(String mainClass, URLClassLoader classLoader) {
+        this.group = new ThreadGroup("in-process-" + mainClass);
+        this.classLoader = classLoader;
+    }
+
+    /**
+     * @param properties system properties set while the main class runs
+     * @return empty when another main class is already running in process
+     * @throws IllegalStateException when the main class cannot be loaded
+     */
+    public static Optional<InProcessClient> tryStart(ModuleClasspath classpath, String mainClass, Map<String, String> properties) {
+        if (!SLOT.tryAcquire()) {
+            return Optional.empty();
+        }
+        URLClassLoader classLoader = new URLClassLoader(urls(classpath), ClassLoader.getPlatformClassLoader());
+        Method main;
+        try {
+            main = Class.forName(mainClass, false, classLoader).getMethod("main", String[].class);
+        } catch (ReflectiveOperationException | LinkageError e) {
+            close(classLoader);
+            SLOT.release();
+            throw new IllegalStateException("Cannot load " + mainClass + ": " + e, e);
+        }
+        installStreams();
+        InProcessClient client = new InProcessClient(mainClass, classLoader);
+        client.takeOverSpringShutdownHook();
+        properties.forEach((key, value) -> client.previousProperties.put(key, System.setProperty(key, value)));
+        running = client;
+        Thread thread = new Thread(client.group, () -> client.run(main), "main");
+        thread.setContextClassLoader(classLoader);
+        thread.start();
+        return Optional.of(client);
+    }
+
+    /**
+     * Loaded classes calling <code>System.exit</code> or <code>Runtime.halt</code> would stop the grader, they must be forked.
+     */
+    public static boolean callsSystemExit(Path classesDirectory) {
+        if (!Files.isDirectory(classesDirectory)) {
+            return false;
+        }
+        try (Stream<Path> paths = Files.walk(classesDirectory)) {
+            return paths.filter(p -> p.toString().endsWith(".class")).anyMatch(InProcessClient::callsSystemExitIn);
+        } catch (IOException e) {
+            return true;
+        }
+    }
+
+    /**
+     * Looks for a method reference to an exit method in the constant pool of the class, a call being compiled to one.
+     */
+    static boolean callsSystemExitIn(Path classFile) {
+        try (DataInputStream input = new DataInputStream(new BufferedInputStream(Files.newInputStream(classFile)))) {
+            if (input.readInt() != 0xCAFEBABE) {
+                return true;
+            }
+            input.readUnsignedShort(); // minor version
+            input.readUnsignedShort(); // major version
+            int count = input.readUnsignedShort();
+            String[] utf8 = new String[count];
+            int[] classNames = new int[count];
+            int[][] nameAndTypes = new int[count][];
+            int[][] methodRefs = new int[count][];
+            for (int i = 1; i < count; i++) {
+                int tag = input.readUnsignedByte();
+                switch (tag) {
+                    case 1 -> utf8[i] = input.readUTF();
+                    case 7 -> classNames[i] = input.readUnsignedShort();
+                    case 8, 16, 19, 20 -> input.readUnsignedShort();
+                    case 3, 4, 9, 11, 17, 18 -> input.readInt();
+                    case 5, 6 -> {
+                        input.readLong();
+                        i++; // takes two entries
+                    }
+                    case 10 -> methodRefs[i] = new int[]{input.readUnsignedShort(), input.readUnsignedShort()};
+                    case 12 -> nameAndTypes[i] = new int[]{input.readUnsignedShort(), input.readUnsignedShort()};
+                    case 15 -> {
+                        input.readUnsignedByte();
+                        input.readUnsignedShort();
+                    }
+                    default -> {
+                        return true;
+                    }
+                }
+            }
+            for (int[] methodRef : methodRefs) {
+                if (methodRef != null) {
+                    int[] nameAndType = nameAndTypes[methodRef[1]];
+                    String method = utf8[classNames[methodRef[0]]] + "." + utf8[nameAndType[0]] + utf8[nameAndType[1]];
+                    if (EXIT_METHODS.contains(method)) {
+                        return true;
+                    }
+                }
+            }
+            return false;
+        } catch (IOException | RuntimeException e) {
+            return true;
+        }
+    }
+
+    private static URL[] urls(ModuleClasspath classpath) {
+        return Arrays.stream(classpath.asString().split(File.pathSeparator))
+            .map(entry -> {
+                try {
+                    return Paths.get(entry).toUri().toURL();
+                } catch (MalformedURLException e) {
+                    throw new IllegalStateException("Invalid classpath entry: " + entry, e);
+                }
+            })
+            .toArray(URL[]::new);
+    }
+
+    /**
+     * Routes standard streams of threads run in process, others keep the original ones.
+     */
+    private static synchronized void installStreams() {
+        if (originalIn != null) {
+            return;
+        }
+        originalIn = System.in;
+        originalOut = System.out;
+        originalErr = System.err;
+        InputStream originalIn = InProcessClient.originalIn;
+        System.setIn(new InputStream() {
+            @Override
+            public int read() throws IOException {
+                InProcessClient client = current();
+                return client != null ? client.stdin.read() : originalIn.read();
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                InProcessClient client = current();
+                return client != null ? client.stdin.read(b, off, len) : originalIn.read(b, off, len);
+            }
+
+            @Override
+            public int available() throws IOException {
+                InProcessClient client = current();
+                return client != null ? client.stdin.available() : originalIn.available();
+            }
+        });
+        System.setOut(new PrintStream(new RoutedOutputStream(originalOut), true));
+        System.setErr(new PrintStream(new RoutedOutputStream(originalErr), true));
+    }
+
+    /**
+     * Once the last main class run in process ended.
+     */
+    private static synchronized void restoreStreams() {
+        if (originalIn == null) {
+            return;
+        }
+        System.setIn(originalIn);
+        System.setOut(originalOut);
+        System.setErr(originalErr);
+        originalIn = null;
+        originalOut = null;
+        originalErr = null;
+    }
+
+    private static InProcessClient current() {
+        InProcessClient client = running;
+        if (client == null) {
+            return null;
+        }
+        for (ThreadGroup group = Thread.currentThread().getThreadGroup(); group != null; group = group.getParent()) {
+            if (group == client.group) {
+                return client;
+            }
+        }
+        return null;
+    }
+
+    private void run(Method main) {
+        int exitCode = 0;
+        try {
+            main.invoke(null, (Object) new String[0]);
+        } catch (InvocationTargetException e) {
+            failure = e.getCause();
+            System.err.println("Exception in thread \"main\" " + e.getCause());
+            e.getCause().printStackTrace();
+            exitCode = 1;
+        } catch (IllegalAccessException | RuntimeException e) {
+            failure = e;
+            exitCode = 1;
+        }
+        try {
+            while (hasOtherThreads(false)) {
+                TimeUnit.MILLISECONDS.sleep(50L);
+            }
+        } catch (InterruptedException e) {
+            // destroyed
+        }
+        finish(exitCode);
+    }
+
+    /**
+     * @param daemons whether daemon threads count
+     */
+    private boolean hasOtherThreads(boolean daemons) {
+        Thread[] threads = new Thread[group.activeCount() + 8];
+        int count = group.enumerate(threads);
+        for (int i = 0; i < count; i++) {
+            if (threads[i] != Thread.currentThread() && threads[i].isAlive() && (daemons || !threads[i].isDaemon())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return true if no thread of the group but the current one is left
+     */
+    private boolean awaitOtherThreadsEnd(long timeoutMs) {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMs);
+        try {
+            while (hasOtherThreads(true) && System.nanoTime() < deadline) {
+                TimeUnit.MILLISECONDS.sleep(50L);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return !hasOtherThreads(true);
+    }
+
+    /**
+     * Waits for the main class to read its standard input, a sign that it is ready.
+     *
+     * @return false if it failed or exited meanwhile
+     */
+    public boolean awaitInputRead(long timeoutMs) {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMs);
+        try {
+            while (!stdin.hasReader() && failure == null && isAlive() && System.nanoTime() < deadline) {
+                TimeUnit.MILLISECONDS.sleep(10L);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return failure == null && isAlive();
+    }
+
+    public Optional<Throwable> failure() {
+        return Optional.ofNullable(failure);
+    }
+
+    private void finish(int exitCode) {
+        if (!exit.complete(exitCode)) {
+            return;
+        }
+        stdin.close();
+        stdout.close();
+        previousProperties.forEach((key, value) -> {
+            if (value == null) {
+                System.clearProperty(key);
+            } else {
+                System.setProperty(key, value);
+            }
+        });
+        closeSpringContexts();
+        if (awaitOtherThreadsEnd(DISPOSAL_WAIT_MS)) {
+            dispose();
+            return;
+        }
+        LOGGER.warn(group.activeCount() + " threads of " + group.getName() + " are still alive after it exited, clients are forked until they end");
+        // created in the parent group, so that it does not wait for itself
+        Thread reaper = new Thread(group.getParent(), () -> {
+            while (!awaitOtherThreadsEnd(DISPOSAL_WAIT_MS)) {
+                group.interrupt();
+            }
+            dispose();
+        }, group.getName() + "-reaper");
+        reaper.setDaemon(true);
+        reaper.start();
+    }
+
+    /**
+     * Spring Boot closes its application contexts from a JVM shutdown hook, registered once per class loader, which
+     * would keep the class loader until the grader exits.
+     * The hook is marked as already registered and registered here instead, to be removed when the main class ends.
+     */
+    private void takeOverSpringShutdownHook() {
+        Thread thread = Thread.currentThread();
+        ClassLoader previousClassLoader = thread.getContextClassLoader();
+        thread.setContextClassLoader(classLoader);
+        try {
+            Class<?> springApplication = Class.forName("org.springframework.boot.SpringApplication", true, classLoader);
+            Field shutdownHookField = springApplication.getDeclaredField("shutdownHook");
+            shutdownHookField.setAccessible(true);
+            Runnable shutdownHook = (Runnable) shutdownHookField.get(null);
+            Field addedField = shutdownHook.getClass().getDeclaredField("shutdownHookAdded");
+            addedField.setAccessible(true);
+            if (!((AtomicBoolean) addedField.get(shutdownHook)).compareAndSet(false, true)) {
+                return;
+            }
+            springShutdownHook = shutdownHook;
+            springShutdownHookThread = new Thread(shutdownHook, "SpringApplicationShutdownHook");
+            Runtime.getRuntime().addShutdownHook(springShutdownHookThread);
+        } catch (ClassNotFoundException e) {
+            // not a Spring Boot application
+        } catch (ReflectiveOperationException | RuntimeException | LinkageError e) {
+            LOGGER.debug("Unable to take over the Spring shutdown hook of " + group.getName() + ": " + e);
+        } finally {
+            thread.setContextClassLoader(previousClassLoader);
+        }
+    }
+
+    /**
+     * Closes the Spring application contexts started by the main class, as their threads would outlive it otherwise,
+     * by running the shutdown hook right away instead of when the JVM exits.
+     */
+    private void closeSpringContexts() {
+        if (springShutdownHook == null) {
+            return;
+        }
+        try {
+            Runtime.getRuntime().removeShutdownHook(springShutdownHookThread);
+        } catch (IllegalStateException e) {
+            // the JVM is exiting, the hook is already running
+            return;
+        }
+        Thread thread = Thread.currentThread();
+        ClassLoader previousClassLoader = thread.getContextClassLoader();
+        thread.setContextClassLoader(classLoader);
+        try {
+            springShutdownHook.run();
+        } catch (RuntimeException | LinkageError e) {
+            LOGGER.debug("Unable to close Spring contexts of " + group.getName() + ": " + e);
+        } finally {
+            thread.setContextClassLoader(previousClassLoader);
+        }
+    }
+
+    /**
+     * Only once no thread of the group is left, as they may still load classes.
+     */
+    private void dispose() {
+        running = null;
+        restoreStreams();
+        close(classLoader);
+        SLOT.release();
+    }
+
+    private static void close(URLClassLoader classLoader) {
+        try {
+            classLoader.close();
+        } catch (IOException e) {
+            LOGGER.debug("Unable to close class loader: " + e.getMessage());
+        }
+    }
+
+    @Override
+    public OutputStream getOutputStream() {
+        return stdin.output();
+    }
+
+    @Override
+    public InputStream getInputStream() {
+        return stdout.input();
+    }
+
+    /**
+     * Standard error is merged into {@link #getInputStream()}.
+     */
+    @Override
+    public InputStream getErrorStream() {
+        return InputStream.nullInputStream();
+    }
+
+    @Override
+    public int waitFor() throws InterruptedException {
+        try {
+            return exit.get();
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @Override
+    public boolean waitFor(long timeout, TimeUnit unit) throws InterruptedException {
+        try {
+            exit.get(timeout, unit);
+            return true;
+        } catch (TimeoutException e) {
+            return false;
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @Override
+    public int exitValue() {
+        if (!exit.isDone()) {
+            throw new IllegalThreadStateException("Still running");
+        }
+        return exit.join();
+    }
+
+    @Override
+    public boolean isAlive() {
+        return !exit.isDone();
+    }
+
+    @Override
+    public CompletableFuture<Process> onExit() {
+        return exit.thenApply(code -> this);
+    }
+
+    @Override
+    public void destroy() {
+        group.interrupt();
+        finish(137);
+    }
+
+    private static class RoutedOutputStream extends OutputStream {
+        private final OutputStream original;
+
+        private RoutedOutputStream(OutputStream original) {
+            this.original = original;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            InProcessClient client = current();
+            if (client != null) {
+                client.stdout.write(b, off, len);
+            } else {
+                original.write(b, off, len);
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            if (current() == null) {
+                original.flush();
+            }
+        }
+    }
+
+    /**
+     * Unbounded in-memory pipe, which unlike {@link java.io.PipedInputStream} can be written by any thread.
+     */
+    private static class MemoryPipe {
+        private byte[] buffer = new byte[8192];
+        private int start;
+        private int end;
+        private int readers;
+        private boolean closed;
+
+        private synchronized void write(byte[] b, int off, int len) throws IOException {
+            if (closed) {
+                throw new IOException("Pipe closed");
+            }
+            if (end + len > buffer.length) {
+                int size = end - start;
+                byte[] target = size + len > buffer.length ? new byte[Math.max(buffer.length * 2, size + len)] : buffer;
+                System.arraycopy(buffer, start, target, 0, size);
+                buffer = target;
+                start = 0;
+                end = size;
+            }
+            System.arraycopy(b, off, buffer, end, len);
+            end += len;
+            notifyAll();
+        }
+
+        private synchronized int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            readers++;
+            try {
+                while (start == end && !closed) {
+                    wait();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while reading");
+            } finally {
+                readers--;
+            }
+            if (start == end) {
+                return -1;
+            }
+            int read = Math.min(len, end - start);
+            System.arraycopy(buffer, start, b, off, read);
+            start += read;
+            return read;
+        }
+
+        private int read() throws IOException {
+            byte[] b = new byte[1];
+            return read(b, 0, 1) == -1 ? -1 : b[0] & 0xFF;
+        }
+
+        private synchronized int available() {
+            return end - start;
+        }
+
+        private synchronized boolean hasReader() {
+            return readers > 0;
+        }
+
+        private synchronized void close() {
+            closed = true;
+            notifyAll();
+        }
+
+        private InputStream input() {
+            return new InputStream() {
+                @Override
+                public int read() throws IOException {
+                    return MemoryPipe.this.read();
+                }
+
+                @Override
+                public int read(byte[] b, int off, int len) throws IOException {
+                    return MemoryPipe.this.read(b, off, len);
+                }
+
+                @Override
+                public int available() {
+                    return MemoryPipe.this.available();
+                }
+            };
+        }
+
+        private OutputStream output() {
+            return new OutputStream() {
+                @Override
+                public void write(int b) throws IOException {
+                    MemoryPipe.this.write(new byte[]{(byte) b}, 0, 1);
+                }
+
+                @Override
+                public void write(byte[] b, int off, int len) throws IOException {
+                    MemoryPipe.this.write(b, off, len);
+                }
+
+                @Override
+                public void close() {
+                    MemoryPipe.this.close();
+                }
+            };
+        }
+    }
+}
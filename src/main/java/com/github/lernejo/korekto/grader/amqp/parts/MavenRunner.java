@@ -0,0 +1,115 @@
+package com.github.lernejo.korekto.grader.amqp.parts;
+
+import com.github.lernejo.korekto.grader.amqp.LaunchingContext;
+import com.github.lernejo.korekto.toolkit.misc.HumanReadableDuration;
+import com.github.lernejo.korekto.toolkit.thirdparty.maven.MavenExecutionHandle;
+import com.github.lernejo.korekto.toolkit.thirdparty.maven.MavenExecutor;
+import com.github.lernejo.korekto.toolkit.thirdparty.maven.MavenInvocationResult;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Runs Maven goals on exercises.
+ * <p>
+ * By default (<code>-Dmaven_execution=fork</code>), each invocation forks a new Maven JVM.
+ * With <code>-Dmaven_execution=daemon</code>, goals are run through a <a href="https://github.com/apache/maven-mvnd">Maven daemon</a>
+ * (<code>-Dmaven_daemon_executable=mvnd</code>), which stays warm across invocations and students.
+ * Long-running goals (such as <code>spring-boot:run</code>) are always forked, as stopping the daemon client does not
+ * reliably stop the process it started.
+ */
+public class MavenRunner {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(MavenRunner.class);
+    private static final MavenRunner INSTANCE = new MavenRunner(
+        "daemon".equals(System.getProperty("maven_execution", "fork")),
+        System.getProperty("maven_daemon_executable", "mvnd"));
+
+    private volatile boolean useDaemon;
+    private final String daemonExecutable;
+
+    private MavenRunner(boolean useDaemon, String daemonExecutable) {
+        this.useDaemon = useDaemon;
+        this.daemonExecutable = daemonExecutable;
+    }
+
+    public static MavenRunner get() {
+        return INSTANCE;
+    }
+
+    public Result execute(LaunchingContext context, String goals) {
+        long startTime = System.currentTimeMillis();
+        boolean daemon = useDaemon;
+        try {
+            if (daemon) {
+                try {
+                    return executeWithDaemon(context, goals);
+                } catch (IOException e) {
+                    LOGGER.warn("Unable to use Maven daemon `" + daemonExecutable + "`, falling back to forked Maven: " + e.getMessage());
+                    useDaemon = false;
+                    daemon = false;
+                }
+            }
+            MavenInvocationResult result = MavenExecutor.executeGoal(context.getExercise(), context.getConfiguration().getWorkspace(), goals);
+            return new Result(result.getStatus() == MavenInvocationResult.Status.OK, result.getOutput());
+        } finally {
+            long duration = System.currentTimeMillis() - startTime;
+            context.metrics.timer("korekto_maven_invocation_seconds", "mode", daemon ? "daemon" : "fork").record(duration);
+            LOGGER.debug("Maven `" + goals + "` (" + (daemon ? "daemon" : "fork") + ") in " + HumanReadableDuration.toString(duration));
+        }
+    }
+
+    public MavenExecutionHandle executeAsync(LaunchingContext context, String goals) {
+        return MavenExecutor.executeGoalAsync(context.getExercise(), context.getConfiguration().getWorkspace(), goals);
+    }
+
+    private Result executeWithDaemon(LaunchingContext context, String goals) throws IOException {
+        List<String> command = new ArrayList<>();
+        command.add(daemonExecutable);
+        command.add("-B");
+        command.addAll(splitArguments(goals));
+        Process process = new ProcessBuilder(command)
+            .directory(context.getExercise().getRoot().toFile())
+            .redirectErrorStream(true)
+            .start();
+        try (CloseableProcess ignored = new CloseableProcess(process)) {
+            String output = new String(process.getInputStream().readAllBytes(), StandardCharsets.UTF_8);
+            return new Result(process.waitFor() == 0, output);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Maven daemon invocation have been interrupted!");
+        }
+    }
+
+    /**
+     * Splits on spaces, except inside single quotes.
+     */
+    static List<String> splitArguments(String arguments) {
+        List<String> split = new ArrayList<>();
+        StringBuilder current = new StringBuilder();
+        boolean quoted = false;
+        for (char c : arguments.toCharArray()) {
+            if (c == '\'') {
+                quoted = !quoted;
+            } else if (c == ' ' && !quoted) {
+                if (current.length() > 0) {
+                    split.add(current.toString());
+                    current.setLength(0);
+                }
+            } else {
+                current.append(c);
+            }
+        }
+        if (current.length() > 0) {
+            split.add(current.toString());
+        }
+        return split;
+    }
+
+    public record Result(boolean successful, String output) {
+    }
+}
@@ -0,0 +1,43 @@
+package com.github.lernejo.korekto.grader.amqp.parts;
+
+import com.github.lernejo.korekto.grader.amqp.LaunchingContext;
+import com.github.lernejo.korekto.toolkit.PartGrader;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Part grader whose grade only depends on some source trees of the exercise, and can therefore be reused as long as
+ * their content does not change.
+ */
+public interface MemoizablePartGrader extends PartGrader<LaunchingContext> {
+
+    Set<String> KNOWN_MODULES = Set.of("client", "server");
+
+    /**
+     * @return paths, relative to the exercise root, of the files and directories the grade depends on
+     */
+    List<String> sourceTrees(LaunchingContext context);
+
+    /**
+     * @param modules modules the part depends on, among <i>client</i> and <i>server</i>
+     * @return the root <i>pom.xml</i> and the given modules, or the whole project if it has other modules, which the given
+     * ones may depend on
+     */
+    static List<String> moduleTrees(LaunchingContext context, String... modules) {
+        if (context.modules.isEmpty() || !KNOWN_MODULES.containsAll(context.modules)) {
+            return List.of("");
+        }
+        List<String> trees = new ArrayList<>();
+        trees.add("pom.xml");
+        trees.addAll(List.of(modules));
+        return trees;
+    }
+
+    /**
+     * Restores the state the grading would have left in the context, when a memoized grade is reused instead.
+     */
+    default void restore(LaunchingContext context, double grade) {
+    }
+}
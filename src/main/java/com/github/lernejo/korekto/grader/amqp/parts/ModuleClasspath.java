@@ -0,0 +1,92 @@
+package com.github.lernejo.korekto.grader.amqp.parts;
+
+import com.github.lernejo.korekto.grader.amqp.LaunchingContext;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Runtime classpath of a module of the exercise, as exported by the {@link ProjectBuild}.
+ *
+ * @param moduleRoot   directory of the module
+ * @param dependencies jars, separated by {@link File#pathSeparator}
+ */
+public record ModuleClasspath(Path moduleRoot, String dependencies) {
+
+    /**
+     * @param module name of the module, or <code>null</code> for single-module projects
+     * @throws IllegalStateException holding the Maven output when the classpath was not exported
+     */
+    public static ModuleClasspath of(LaunchingContext context, String module) {
+        ProjectBuild build = context.build();
+        Path moduleRoot = module != null ? context.getExercise().getRoot().resolve(module) : context.getExercise().getRoot();
+        Path classpathFile = moduleRoot.resolve(ProjectBuild.CLASSPATH_FILE);
+        if (!Files.exists(classpathFile)) {
+            throw new IllegalStateException(build.output());
+        }
+        try {
+            return new ModuleClasspath(moduleRoot, Files.readString(classpathFile, StandardCharsets.UTF_8).trim());
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to read classpath of " + moduleRoot, e);
+        }
+    }
+
+    public Path classesDirectory() {
+        return moduleRoot.resolve("target").resolve("classes");
+    }
+
+    public String asString() {
+        return classesDirectory() + File.pathSeparator + dependencies;
+    }
+
+    /**
+     * @return sorted dependency jars which may be shared with other students, excluding those built from the project (in a <i>target</i> directory)
+     */
+    public List<String> sharedJars() {
+        return dependencyEntries()
+            .filter(e -> e.endsWith(".jar") && !e.contains(File.separator + "target" + File.separator))
+            .sorted()
+            .toList();
+    }
+
+    /**
+     * Classpath of launched JVMs, with the {@link #sharedJars()} first when {@link AppCds} is enabled, as class data
+     * sharing archives only apply to a prefix of the classpath.
+     */
+    public String launchClasspath() {
+        if (!AppCds.ENABLED) {
+            return asString();
+        }
+        List<String> sharedJars = sharedJars();
+        Stream<String> others = dependencyEntries().filter(e -> !sharedJars.contains(e));
+        return Stream.of(sharedJars.stream(), Stream.of(classesDirectory().toString()), others)
+            .flatMap(s -> s)
+            .reduce((a, b) -> a + File.pathSeparator + b)
+            .orElseThrow();
+    }
+
+    private Stream<String> dependencyEntries() {
+        return Arrays.stream(dependencies.split(File.pathSeparator)).filter(e -> !e.isBlank());
+    }
+
+    /**
+     * Writes a <a href="https://docs.oracle.com/en/java/javase/17/docs/specs/man/java.html#java-command-line-argument-files">java argument file</a>
+     * holding the {@link #launchClasspath()}, to keep command lines short.
+     */
+    public Path writeArgumentFile(String fileName) {
+        Path argumentFile = moduleRoot.resolve("target").resolve(fileName);
+        try {
+            Files.writeString(argumentFile, "-cp " + launchClasspath(), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to generate CP file " + argumentFile, e);
+        }
+        return argumentFile;
+    }
+}
@@ -0,0 +1,60 @@
+package com.github.lernejo.korekto.grader.amqp.parts;
+
+import com.github.lernejo.korekto.grader.amqp.GradingFacts;
+import com.github.lernejo.korekto.grader.amqp.LaunchingContext;
+import com.github.lernejo.korekto.toolkit.GradePart;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.List;
+
+/**
+ * Grades compilation and tests from the shared {@link ProjectBuild}, instead of forking Maven again.
+ */
+public class Part1Grader implements MemoizablePartGrader {
+
+    @Override
+    public @NotNull String name() {
+        return "Part 1 - Compilation & Tests";
+    }
+
+    @Override
+    public @NotNull Double maxGrade() {
+        return 2.0D;
+    }
+
+    @Override
+    public @NotNull GradePart grade(LaunchingContext context) {
+        ProjectBuild build = context.build();
+        if (build.status() == ProjectBuild.Status.BUILD_FAILED) {
+            context.facts.establish(GradingFacts.Fact.BUILT, false);
+            context.markTransientFailure("Build failed: " + build.failureSummary());
+            return result(List.of("The grader could not build the project (not a compilation error): " + build.failureSummary()), 0.0D);
+        }
+        context.facts.establish(GradingFacts.Fact.BUILT, true);
+        if (!build.compiled()) {
+            context.markAsCompilationFailed();
+            return result(List.of("Compilation failed, see `mvn test-compile`"), 0.0D);
+        }
+        if (build.testFailed()) {
+            context.markAsTestFailed();
+            context.facts.establish(GradingFacts.Fact.COMPILED, true);
+            return result(List.of("There are test failures, see `mvn test`"), maxGrade() / 2);
+        }
+        context.facts.establish(GradingFacts.Fact.COMPILED, true);
+        return result(List.of(), maxGrade());
+    }
+
+    @Override
+    public List<String> sourceTrees(LaunchingContext context) {
+        return List.of("");
+    }
+
+    @Override
+    public void restore(LaunchingContext context, double grade) {
+        if (grade == 0.0D) {
+            context.markAsCompilationFailed();
+        } else if (grade < maxGrade()) {
+            context.markAsTestFailed();
+        }
+    }
+}
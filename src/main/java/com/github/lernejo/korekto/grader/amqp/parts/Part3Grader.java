@@ -4,6 +4,7 @@ import java.io.IOException;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Optional;
 import java.util.Random;
 import java.util.concurrent.CancellationException;
 import java.util.concurrent.TimeUnit;
@@ -11,16 +12,14 @@ import java.util.concurrent.TimeoutException;
 
 import com.fasterxml.jackson.core.JacksonException;
 import com.fasterxml.jackson.databind.JsonMappingException;
-import com.github.lernejo.korekto.grader.amqp.ChatApiClient;
+import com.github.lernejo.korekto.grader.amqp.GradingFacts;
 import com.github.lernejo.korekto.grader.amqp.LaunchingContext;
+import com.github.lernejo.korekto.grader.amqp.QueueInfo;
+import com.github.lernejo.korekto.grader.amqp.QueueMonitor;
+import com.github.lernejo.korekto.grader.amqp.StageScheduler;
 import com.github.lernejo.korekto.toolkit.GradePart;
-import com.github.lernejo.korekto.toolkit.PartGrader;
-import com.github.lernejo.korekto.toolkit.misc.Ports;
 import com.github.lernejo.korekto.toolkit.misc.SubjectForToolkitInclusion;
 import com.github.lernejo.korekto.toolkit.thirdparty.amqp.AmqpCapable;
-import com.github.lernejo.korekto.toolkit.thirdparty.maven.MavenExecutionHandle;
-import com.github.lernejo.korekto.toolkit.thirdparty.maven.MavenExecutor;
-import com.github.lernejo.korekto.toolkit.thirdparty.maven.MavenReader;
 import com.rabbitmq.client.AMQP;
 import com.rabbitmq.client.Channel;
 import com.rabbitmq.client.Connection;
@@ -28,16 +27,12 @@ import com.rabbitmq.client.ConnectionFactory;
 import org.jetbrains.annotations.NotNull;
 import retrofit2.Response;
 
-public class Part3Grader implements PartGrader<LaunchingContext>, AmqpCapable {
+public class Part3Grader implements MemoizablePartGrader, StagedPartGrader, DependentPartGrader, AmqpCapable {
 
     public static final String QUEUE_NAME = "chat_messages";
-    private final ChatApiClient client;
+    private static final long CONSUMPTION_MAX_WAIT_MS = 500L;
     private final Random random = new Random();
 
-    public Part3Grader(ChatApiClient client) {
-        this.client = client;
-    }
-
     @Override
     public @NotNull String name() {
         return "Part 3 - Listener AMQP & Server HTTP";
@@ -49,29 +44,32 @@ public class Part3Grader implements PartGrader<LaunchingContext>, AmqpCapable {
     }
 
     @Override
-    public @NotNull GradePart grade(LaunchingContext context) {
-        if (context.hasCompilationFailed()) {
-            return result(List.of("Not trying to start server as compilation failed"), 0.0D);
-        }
+    public StageScheduler.Stage stage() {
+        return StageScheduler.Stage.RUNTIME;
+    }
 
-        MavenExecutor.executeGoal(context.getExercise(), context.getConfiguration().getWorkspace(),
-            "org.springframework.boot:spring-boot-maven-plugin:2.5.5:help");
+    @Override
+    public List<GradingFacts.Fact> requirements() {
+        return List.of(GradingFacts.Fact.BUILT, GradingFacts.Fact.COMPILED, GradingFacts.Fact.SERVER_BOOTS);
+    }
 
+    @Override
+    public List<String> sourceTrees(LaunchingContext context) {
+        return MemoizablePartGrader.moduleTrees(context, "server");
+    }
+
+    @Override
+    public @NotNull GradePart grade(LaunchingContext context) {
         ConnectionFactory factory = context.newConnectionFactory();
         deleteQueue(factory, QUEUE_NAME);
-        context.modules = MavenReader.readModel(context.getExercise()).getModules();
-        String serverModuleSpec = context.modules.size() > 0 ? "-pl :server " : "";
-        try
-            (MavenExecutionHandle ignored = MavenExecutor.executeGoalAsync(context.getExercise(), context.getConfiguration().getWorkspace(),
-                "org.springframework.boot:spring-boot-maven-plugin:2.5.5:run " + serverModuleSpec + " -Dspring-boot.run.jvmArguments='-Dserver.port=8085 -Dspring.rabbitmq.port=" + context.rabbitPort + "'")) {
-
-            Ports.waitForPortToBeListenedTo(8085, TimeUnit.SECONDS, context.SERVER_START_TIMEOUT);
+        try {
+            context.serverSession.acquire(context);
 
             double grade = maxGrade();
             List<String> errors = new ArrayList<>();
 
             try {
-                Response<List<String>> messagesResponse = client.getMessages().execute();
+                Response<List<String>> messagesResponse = context.client.getMessages().execute();
                 if (!messagesResponse.isSuccessful()) {
                     grade -= maxGrade() / 2;
                     errors.add("Unsuccessful response of GET /api/message: " + messagesResponse.code());
@@ -93,18 +91,23 @@ public class Part3Grader implements PartGrader<LaunchingContext>, AmqpCapable {
                         int callNbr = random.nextInt(6) + 3;
 
                         AMQP.BasicProperties basicProperties = new AMQP.BasicProperties().builder().contentType("text/plain").deliveryMode(2).build();
+                        Optional<QueueInfo> queueBefore = context.queueMonitor().info(QUEUE_NAME);
+                        long roundTripStart = System.currentTimeMillis();
+                        channel.confirmSelect();
                         for (int i = 0; i < callNbr; i++) {
                             channel.basicPublish("", QUEUE_NAME, true, false, basicProperties, ("hello-" + i).getBytes(StandardCharsets.UTF_8));
                         }
-
                         try {
-                            TimeUnit.MILLISECONDS.sleep(500L);
+                            channel.waitForConfirmsOrDie(context.queueReadTimeout());
                         } catch (InterruptedException e) {
-                            throw new IllegalStateException("Sleep have been interrupted!");
+                            throw new IllegalStateException("Wait for publisher confirms have been interrupted!");
                         }
 
+                        Optional<QueueInfo> queueAfter = context.metrics.timer("korekto_queue_drain_wait_seconds")
+                            .time(() -> context.queueMonitor().awaitConsumed(QUEUE_NAME, queueBefore, callNbr, CONSUMPTION_MAX_WAIT_MS));
+
                         try {
-                            Response<List<String>> secMessagesResponse = client.getMessages().execute();
+                            Response<List<String>> secMessagesResponse = context.probe.awaitMessageCount(callNbr, CONSUMPTION_MAX_WAIT_MS, queueAfter);
                             if (!secMessagesResponse.isSuccessful()) {
                                 grade -= maxGrade() / 2;
                                 errors.add("Unsuccessful response of GET /api/message: " + secMessagesResponse.code());
@@ -112,6 +115,10 @@ public class Part3Grader implements PartGrader<LaunchingContext>, AmqpCapable {
                                 if (secMessagesResponse.body().size() != callNbr) {
                                     grade -= maxGrade() / 2;
                                     errors.add("GET /api/message should respond a list of " + callNbr + " messages (messages sent), but was: " + secMessagesResponse.body().size());
+                                    context.markTimeout("Timeout waiting for messages to be displayed");
+                                    QueueMonitor.diagnose(QUEUE_NAME, queueBefore, queueAfter, callNbr).ifPresent(errors::add);
+                                } else {
+                                    context.metrics.timer("korekto_message_round_trip_seconds", "part", name()).record(System.currentTimeMillis() - roundTripStart);
                                 }
                             }
                         } catch(JacksonException e) {
@@ -121,7 +128,8 @@ public class Part3Grader implements PartGrader<LaunchingContext>, AmqpCapable {
                     }
 
                 } catch (IOException | TimeoutException e) {
-                    throw new IllegalStateException("Could not connect to the dockerized RabbitMQ", e);
+                    context.markTransientFailure("Broker connection failed: " + e.getMessage());
+                    throw new IllegalStateException("Could not connect to the broker", e);
                 }
 
             } catch (RuntimeException e) {
@@ -131,13 +139,11 @@ public class Part3Grader implements PartGrader<LaunchingContext>, AmqpCapable {
 
             return result(errors, grade);
         } catch (CancellationException e) {
-            return result(List.of("Server failed to start within " + context.SERVER_START_TIMEOUT + " sec."), 0.0D);
+            return result(List.of(GradingFacts.Fact.SERVER_BOOTS.refutation(context)), 0.0D);
         } catch (RuntimeException e) {
             return result(List.of("Unwanted error during API invocation: " + e.getMessage()), 0.0D);
         } catch (IOException e) {
             return result(List.of("Fail to call server: " + e.getMessage()), 0.0D);
-        } finally {
-            Ports.waitForPortToBeFreed(8085, TimeUnit.SECONDS, 5L);
         }
     }
 }
@@ -2,49 +2,44 @@ package com.github.lernejo.korekto.grader.amqp.parts;
 
 import com.fasterxml.jackson.core.JacksonException;
 import com.fasterxml.jackson.databind.JsonMappingException;
-import com.github.lernejo.korekto.grader.amqp.ChatApiClient;
+import com.github.lernejo.korekto.grader.amqp.AdaptiveTimeouts;
+import com.github.lernejo.korekto.grader.amqp.GradingFacts;
 import com.github.lernejo.korekto.grader.amqp.LaunchingContext;
+import com.github.lernejo.korekto.grader.amqp.PublishSpy;
+import com.github.lernejo.korekto.grader.amqp.QueueInfo;
+import com.github.lernejo.korekto.grader.amqp.QueueMonitor;
+import com.github.lernejo.korekto.grader.amqp.StageScheduler;
 import com.github.lernejo.korekto.toolkit.GradePart;
-import com.github.lernejo.korekto.toolkit.PartGrader;
-import com.github.lernejo.korekto.toolkit.misc.Ports;
 import com.github.lernejo.korekto.toolkit.misc.SubjectForToolkitInclusion;
-import com.github.lernejo.korekto.toolkit.thirdparty.maven.MavenExecutionHandle;
-import com.github.lernejo.korekto.toolkit.thirdparty.maven.MavenExecutor;
-import com.github.lernejo.korekto.toolkit.thirdparty.maven.MavenInvocationResult;
-import org.awaitility.Awaitility;
-import org.awaitility.core.ConditionTimeoutException;
 import org.jetbrains.annotations.NotNull;
-import org.mozilla.universalchardet.UniversalDetector;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import retrofit2.Response;
 
 import java.io.*;
-import java.nio.charset.Charset;
-import java.nio.charset.StandardCharsets;
-import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
 import java.util.Random;
 import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.TimeoutException;
 
-public class Part4Grader implements PartGrader<LaunchingContext> {
+public class Part4Grader implements MemoizablePartGrader, StagedPartGrader, DependentPartGrader {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(Part4Grader.class);
 
-    private final ChatApiClient client;
     private final Random random = new Random();
 
     private final long processReadTimeout = Long.parseLong(System.getProperty("PROCESS_READ_TIMEOUT", "400"));
-    private final long processReadRetryDelay = Long.parseLong(System.getProperty("PROCESS_READ_RETRY_DELAY", "50"));
-
-    public Part4Grader(ChatApiClient client) {
-        this.client = client;
-    }
+    private final long processQuietPeriod = Long.parseLong(System.getProperty("PROCESS_QUIET_PERIOD", "100"));
+    private final int processOutputLines = Integer.parseInt(System.getProperty("PROCESS_OUTPUT_LINES", "200"));
+    private final boolean inProcessClient = "in_process".equals(System.getProperty("client_execution", "forked"));
 
     @Override
     public @NotNull String name() {
@@ -57,217 +52,255 @@ public class Part4Grader implements PartGrader<LaunchingContext> {
     }
 
     @Override
-    public @NotNull GradePart grade(LaunchingContext context) {
-        if (context.hasCompilationFailed()) {
-            return result(List.of("Not trying to start server as compilation failed"), 0.0D);
-        }
-        if (!context.modules.contains("client")) {
-            return result(List.of("No *client* module defined in the root *pom.xml*"), 0.0D);
-        }
+    public StageScheduler.Stage stage() {
+        return StageScheduler.Stage.RUNTIME;
+    }
 
-        MavenInvocationResult result = MavenExecutor.executeGoal(context.getExercise(), context.getConfiguration().getWorkspace(),
-            "dependency:build-classpath -DincludeScope=compile -Dmdep.outputFile=cp.txt -pl :client");
-        Path cpFilePath = context.getExercise().getRoot().resolve("client").resolve("cp.txt");
-        if (result.getStatus() != MavenInvocationResult.Status.OK) {
-            return result(List.of("Unable to determine *client* module classpath: \n```" + result.getOutput() + "\n```"), 0.0D);
-        } else {
-            try {
-                String cp = Files.readString(cpFilePath, StandardCharsets.UTF_8);
-                String fullCp = "-cp " + context.getExercise().getRoot().resolve("client").resolve("target").resolve("classes") + File.pathSeparator + cp;
-                Files.writeString(cpFilePath, fullCp);
-            } catch (IOException e) {
-                return result(List.of("Unable to generate CP file " + e.getMessage()), 0.0D);
-            }
+    @Override
+    public List<GradingFacts.Fact> requirements() {
+        return List.of(GradingFacts.Fact.BUILT, GradingFacts.Fact.COMPILED, GradingFacts.Fact.CLIENT_MODULE, GradingFacts.Fact.SERVER_BOOTS);
+    }
+
+    @Override
+    public List<String> sourceTrees(LaunchingContext context) {
+        return MemoizablePartGrader.moduleTrees(context, "client", "server");
+    }
+
+    @Override
+    public @NotNull GradePart grade(LaunchingContext context) {
+        ModuleClasspath classpath;
+        Path argumentFile;
+        try {
+            classpath = ModuleClasspath.of(context, "client");
+            argumentFile = classpath.writeArgumentFile("korekto-cp.args");
+        } catch (IllegalStateException e) {
+            return result(List.of("Unable to determine *client* module classpath: \n```" + e.getMessage() + "\n```"), 0.0D);
+        } catch (UncheckedIOException e) {
+            return result(List.of(e.getMessage()), 0.0D);
         }
 
         String mainClass = "fr.lernejo.chat.Launcher";
-        ProcessBuilder processBuilder = new ProcessBuilder()
-            .directory(context.getExercise().getRoot().toFile())
-            .command(
-                Paths.get(System.getProperty("java.home")).resolve("bin").resolve("java").toString(),
-                "@client/cp.txt",
-                "-Dspring.rabbitmq.port=" + context.rabbitPort,
-                mainClass);
-
-        try (CloseableProcess process = new CloseableProcess(processBuilder.start());
-             MavenExecutionHandle ignored = MavenExecutor.executeGoalAsync(context.getExercise(), context.getConfiguration().getWorkspace(),
-                 "org.springframework.boot:spring-boot-maven-plugin:2.5.5:run -pl :server -Dspring-boot.run.jvmArguments='-Dserver.port=8085 -Dspring.rabbitmq.port=" + context.rabbitPort + "'")) {
+        long readTimeout = Math.round(processReadTimeout * context.timeouts.loadFactor());
+        long launchTime = System.currentTimeMillis();
+        CloseableProcess started;
+        try {
+            started = startClient(context, classpath, argumentFile, mainClass, readTimeout);
+        } catch (IOException e) {
+            return result(List.of("Cannot start " + mainClass + ": " + e.getMessage()), 0.0D);
+        }
+        try (CloseableProcess process = started) {
+            ProcessOutput output = ProcessOutput.capture(process.process(), processOutputLines);
 
-            Ports.waitForPortToBeListenedTo(8085, TimeUnit.SECONDS, context.SERVER_START_TIMEOUT);
+            context.serverSession.acquire(context);
 
             if (!process.process().isAlive()) {
-                String error = readStream(process.process().getErrorStream());
-                return result(List.of("client crashed at launch: " + error), 0.0D);
+                output.awaitClosed(readTimeout);
+                return result(List.of("client crashed at launch: \n```\n" + output.tail(20) + "\n```"), 0.0D);
             }
 
             double grade = maxGrade();
             List<String> errors = new ArrayList<>();
 
+            int maxMessages = 10;
+            // The shared server still displays messages sent by a previous part, only the last ones are kept
+            int alreadyDisplayed = displayedMessages(context);
             int callNbr = random.nextInt(6) + 1;
+            int expectedMessages = Math.min(maxMessages, alreadyDisplayed + callNbr);
 
-            readAllOutputLogs(process);
+            output.awaitQuiescence(processQuietPeriod, readTimeout);
             // Wait fot the client app to boot
+            context.metrics.timer("korekto_client_launch_seconds").record(System.currentTimeMillis() - launchTime);
 
+            Optional<QueueInfo> queueBefore = context.queueMonitor().info(Part3Grader.QUEUE_NAME);
+            Optional<PublishSpy> spy = PublishSpy.attach(context);
+            long roundTripStart = System.currentTimeMillis();
+            long[] writeTimes = new long[callNbr];
             for (int i = 0; i < callNbr; i++) {
+                writeTimes[i] = System.nanoTime();
                 writeInput(process.process(), "message " + i + "\n");
             }
 
-            readAllOutputLogs(process);
-
-            try {
-                TimeUnit.MILLISECONDS.sleep(500L);
-            } catch (InterruptedException e) {
-                throw new IllegalStateException("Sleep have been interrupted!");
-            }
-
-            AtomicReference<Response<List<String>>> response = new AtomicReference<>();
-            try {
-                Awaitility.await().atMost(context.QUEUE_READ_TIMEOUT, TimeUnit.SECONDS)
-                    .until(
-                        () -> {
-                            response.set(client.getMessages().execute());
-                            return response.get();
-                        },
-                        r -> !r.isSuccessful() || r.body().size() == callNbr);
-            } catch (ConditionTimeoutException e) {
-                String message = "Timeout waiting for API to display the " + callNbr + " sent messages, after " + context.QUEUE_READ_TIMEOUT + " seconds";
-                if (response.get() != null) {
-                    if (!response.get().isSuccessful()) {
-                        message += ", bad response code: " + response.get().code();
+            if (spy.isPresent()) {
+                // publishes are observed as they happen, a silent client is detected without waiting for its output to settle,
+                // given the time to open its connection on the first send
+                List<PublishSpy.Publish> publishes;
+                try (PublishSpy publishSpy = spy.get()) {
+                    publishes = publishSpy.awaitPublishes(callNbr, context.queueReadTimeout());
+                }
+                if (publishes.isEmpty()) {
+                    context.markTimeout("No publish observed", AdaptiveTimeouts.Latency.MESSAGE_CONSUMPTION);
+                    return result(List.of("The client did not publish any message after " + callNbr + " lines were written to its standard input"), 0.0D);
+                }
+                for (int i = 0; i < callNbr; i++) {
+                    String line = "message " + i;
+                    long writeTime = writeTimes[i];
+                    // publish order may differ from write order, each line is matched with the publish carrying it
+                    Optional<PublishSpy.Publish> publish = publishes.stream().filter(p -> p.carries(line)).findFirst();
+                    if (publish.isPresent()) {
+                        long publishLatency = publish.get().millisSince(writeTime);
+                        context.metrics.timer("korekto_client_publish_latency_seconds").record(publishLatency);
+                        LOGGER.debug("Line " + i + " published by the client after " + publishLatency + " ms");
                     } else {
-                        message += ", only got `" + response.get().body() + "`";
+                        LOGGER.debug("Line " + i + " not observed among client publishes");
                     }
                 }
-                return result(List.of(message), 0.0D);
-            } catch (Exception e) {
-                if (e instanceof JacksonException je) {
-                    grade = 0;
-                    errors.add("Invalid JSON response for GET /api/message: " + je.getOriginalMessage());
-                    return result(errors, grade);
-                } else {
-                    throw new RuntimeException(e);
-                }
+            } else {
+                output.awaitQuiescence(processQuietPeriod, readTimeout);
             }
 
-            if (!response.get().isSuccessful()) {
+            Response<List<String>> response;
+            long consumptionStart = System.currentTimeMillis();
+            Optional<QueueInfo> queueAfter = context.queueMonitor().awaitConsumed(Part3Grader.QUEUE_NAME, queueBefore, callNbr, context.queueReadTimeout());
+            // consumption was awaited on the broker side, the server is only given what is left to expose messages
+            long exposureTimeout = Math.max(500L, context.queueReadTimeout() - (System.currentTimeMillis() - consumptionStart));
+            try {
+                response = context.probe.awaitMessageCount(expectedMessages, exposureTimeout, queueAfter);
+            } catch (JacksonException e) {
                 grade = 0;
-                errors.add("Unsuccessful response of GET /api/message: " + response.get().code());
+                errors.add("Invalid JSON response for GET /api/message: " + e.getOriginalMessage());
                 return result(errors, grade);
-            } else {
-                if (response.get().body().size() != callNbr) {
-                    grade = 0;
-                    errors.add("GET /api/message should respond a list of " + callNbr + " messages (messages sent), but was: " + response.get().body().size());
-                }
+            } catch (IOException e) {
+                throw new RuntimeException(e);
             }
 
+            if (!response.isSuccessful()) {
+                grade = 0;
+                errors.add("Unsuccessful response of GET /api/message: " + response.code());
+                return result(errors, grade);
+            } else if (response.body().size() != expectedMessages) {
+                context.markTimeout("Timeout waiting for messages to be displayed", AdaptiveTimeouts.Latency.MESSAGE_CONSUMPTION);
+                errors.add("Timeout waiting for API to display " + expectedMessages + " messages (" + callNbr + " sent" + (alreadyDisplayed > 0 ? ", " + alreadyDisplayed + " already displayed" : "") + "), after " + seconds(context.queueReadTimeout()) + " seconds, only got `" + response.body() + "`");
+                QueueMonitor.diagnose(Part3Grader.QUEUE_NAME, queueBefore, queueAfter, callNbr).ifPresent(errors::add);
+                return result(errors, 0.0D);
+            }
+            context.timeouts.record(AdaptiveTimeouts.Latency.MESSAGE_CONSUMPTION, System.currentTimeMillis() - consumptionStart);
+            context.metrics.timer("korekto_message_round_trip_seconds", "part", name()).record(System.currentTimeMillis() - roundTripStart);
+
             int messagesToSend = 15 - callNbr;
 
+            Optional<QueueInfo> lastQueueBefore = context.queueMonitor().info(Part3Grader.QUEUE_NAME);
             for (int i = callNbr; i < messagesToSend; i++) {
                 writeInput(process.process(), "message " + i + "\n");
             }
 
             writeInput(process.process(), "q\n");
-            readAllOutputLogs(process);
-            int counter = 0;
-            do {
-                counter++;
-                try {
-                    TimeUnit.MILLISECONDS.sleep(50L);
-                } catch (InterruptedException e) {
-                    throw new IllegalStateException("Sleep have been interrupted!");
-                }
-            } while (counter < 20 && process.process().isAlive());
-
-            int maxMessages = 10;
+            output.awaitQuiescence(processQuietPeriod, readTimeout);
+            awaitExit(process.process(), 1000L);
 
+            Optional<QueueInfo> lastQueueAfter = context.queueMonitor().awaitConsumed(Part3Grader.QUEUE_NAME, lastQueueBefore, messagesToSend - callNbr, context.queueReadTimeout());
             try {
-                Awaitility.await().atMost(context.QUEUE_READ_TIMEOUT, TimeUnit.SECONDS)
-                    .until(
-                        () -> {
-                            response.set(client.getMessages().execute());
-                            return response.get();
-                        },
-                        r -> !r.isSuccessful() || r.body().size() == maxMessages);
-            } catch (ConditionTimeoutException e) {
-                String message = "Timeout waiting for API to display the last " + maxMessages + " sent messages, after " + context.QUEUE_READ_TIMEOUT + " seconds";
-                if (response.get() != null) {
-                    if (!response.get().isSuccessful()) {
-                        message += ", bad response code: " + response.get().code();
-                    } else {
-                        message += ", only got `" + response.get().body() + "`";
-                    }
-                }
-                return result(List.of(message), 0.0D);
+                response = context.probe.awaitMessageCount(maxMessages, context.queueReadTimeout(), lastQueueAfter);
+            } catch (JacksonException e) {
+                errors.add("Invalid JSON response for GET /api/message: " + e.getOriginalMessage());
+                return result(errors, 0.0D);
             }
-            if (!response.get().isSuccessful()) {
+            if (!response.isSuccessful()) {
                 grade = 0;
-                errors.add("Unsuccessful response of GET /api/message: " + response.get().code());
-            } else {
-                if (response.get().body().size() != maxMessages) {
-                    grade -= maxGrade() / 2;
-                    errors.add("GET /api/message should respond a list of the last *" + maxMessages + "* messages received but returned *" + response.get().body().size() + "*");
-                }
+                errors.add("Unsuccessful response of GET /api/message: " + response.code());
+            } else if (response.body().size() != maxMessages) {
+                context.markTimeout("Timeout waiting for messages to be displayed", AdaptiveTimeouts.Latency.MESSAGE_CONSUMPTION);
+                return result(List.of("Timeout waiting for API to display the last " + maxMessages + " sent messages, after " + seconds(context.queueReadTimeout()) + " seconds, only got `" + response.body() + "`"), 0.0D);
             }
             return result(errors, grade);
         } catch (CancellationException e) {
-            return result(List.of("Server failed to start within " + context.SERVER_START_TIMEOUT + " sec."), 0.0D);
+            return result(List.of(GradingFacts.Fact.SERVER_BOOTS.refutation(context)), 0.0D);
         } catch (RuntimeException e) {
             return result(List.of("Unwanted error during API invocation: " + e.getMessage()), 0.0D);
         } catch (IOException e) {
             return result(List.of("Cannot start " + mainClass + ": " + e.getMessage()), 0.0D);
-        } finally {
-            Ports.waitForPortToBeFreed(8085, TimeUnit.SECONDS, 5L);
         }
     }
 
-    private void readAllOutputLogs(CloseableProcess process) {
-        String clientLog;
-        do {
-            clientLog = readOutput(process.process());
-        } while (clientLog != null && clientLog.length() > 0);
+    /**
+     * Runs the client in process when asked to and possible, forks it otherwise.
+     */
+    private CloseableProcess startClient(LaunchingContext context, ModuleClasspath classpath, Path argumentFile, String mainClass, long readTimeout) throws IOException {
+        if (inProcessClient) {
+            Optional<InProcessClient> client = startInProcess(context, classpath, mainClass, readTimeout);
+            if (client.isPresent()) {
+                return new CloseableProcess(client.get());
+            }
+        }
+        AppCds.Launch cds = AppCds.launch(classpath);
+        List<String> command = new ArrayList<>();
+        command.add(Paths.get(System.getProperty("java.home")).resolve("bin").resolve("java").toString());
+        command.addAll(cds.jvmOptions());
+        command.addAll(context.limits.jvmOptions());
+        command.add("@" + argumentFile);
+        command.addAll(context.springRabbitProperties());
+        command.add(mainClass);
+        ProcessBuilder processBuilder = new ProcessBuilder()
+            .directory(context.getExercise().getRoot().toFile())
+            .command(command);
+        Process process;
+        try {
+            process = processBuilder.start();
+        } catch (IOException e) {
+            cds.failed();
+            throw e;
+        }
+        context.limits.confine(process);
+        cds.started(process);
+        return new CloseableProcess(process, cds.stopGracePeriodMs());
+    }
+
+    private Optional<InProcessClient> startInProcess(LaunchingContext context, ModuleClasspath classpath, String mainClass, long readTimeout) {
+        if (InProcessClient.callsSystemExit(classpath.classesDirectory())) {
+            LOGGER.debug("Forking the client as it may call System.exit");
+            return Optional.empty();
+        }
+        Map<String, String> properties = new LinkedHashMap<>();
+        for (String property : context.springRabbitProperties()) {
+            String[] keyValue = property.substring("-D".length()).split("=", 2);
+            properties.put(keyValue[0], keyValue[1]);
+        }
+        Optional<InProcessClient> client;
+        try {
+            client = InProcessClient.tryStart(classpath, mainClass, properties);
+        } catch (IllegalStateException e) {
+            LOGGER.debug("Forking the client as it cannot run in process: " + e.getMessage());
+            return Optional.empty();
+        }
+        if (client.isEmpty()) {
+            LOGGER.debug("Forking the client as another one is running in process");
+        } else if (!client.get().awaitInputRead(readTimeout)) {
+            LOGGER.debug("Forking the client as it failed in process: " + client.get().failure().map(Throwable::toString).orElse("exited"));
+            client.get().destroy();
+            return Optional.empty();
+        }
+        return client;
     }
 
-    @SubjectForToolkitInclusion
-    private String readOutput(Process process) {
-        return readStream(process.getInputStream());
+    private static long seconds(long millis) {
+        return TimeUnit.MILLISECONDS.toSeconds(millis + 999L);
     }
 
-    private String readStream(InputStream inputStream) {
-        long start = System.currentTimeMillis();
-        do {
-            try {
-                TimeUnit.MILLISECONDS.sleep(processReadRetryDelay);
-                StringBuilder sb = new StringBuilder();
-                while (inputStream.available() > 0) {
-                    byte[] bytes = inputStream.readNBytes(inputStream.available());
-                    UniversalDetector detector = new UniversalDetector();
-                    detector.handleData(bytes);
-                    detector.dataEnd();
-                    String detectedCharset = detector.getDetectedCharset();
-                    sb.append(new String(bytes, detectedCharset != null ? Charset.forName(detectedCharset) : StandardCharsets.UTF_8));
-                }
-                String lineOutput = sb.toString().trim();
-                if (lineOutput.length() == 0) {
-                    continue;
-                }
-                return lineOutput;
-            } catch (IOException | InterruptedException e) {
-                LOGGER.warn("Unable to read process output: " + e.getMessage());
-                return null;
-            }
-        } while (System.currentTimeMillis() - start < processReadTimeout);
-        LOGGER.warn("No process output to read in " + processReadTimeout + " ms");
-        return null;
+    private int displayedMessages(LaunchingContext context) {
+        try {
+            Response<List<String>> response = context.client.getMessages().execute();
+            return response.isSuccessful() && response.body() != null ? response.body().size() : 0;
+        } catch (IOException | RuntimeException e) {
+            return 0;
+        }
+    }
+
+    private void awaitExit(Process process, long maxWaitMs) {
+        try {
+            process.onExit().get(maxWaitMs, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException | ExecutionException e) {
+            // process is killed afterward
+        } catch (InterruptedException e) {
+            throw new IllegalStateException("Wait for process exit have been interrupted!");
+        }
     }
 
     @SubjectForToolkitInclusion
-    private void writeInput(Process process, String s) {
+    static void writeInput(Process process, String s) {
         try {
             BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(process.getOutputStream()));
             writer.write(s);
             writer.flush();
-            TimeUnit.MILLISECONDS.sleep(100L);
-        } catch (IOException | InterruptedException e) {
+        } catch (IOException e) {
             LOGGER.warn("Unable to write to process input: " + e.getMessage());
         }
     }
@@ -0,0 +1,221 @@
+package com.github.lernejo.korekto.grader.amqp.parts;
+
+import com.github.lernejo.korekto.grader.amqp.GradingFacts;
+import com.github.lernejo.korekto.grader.amqp.GradingMetrics;
+import com.github.lernejo.korekto.grader.amqp.LaunchingContext;
+import com.github.lernejo.korekto.grader.amqp.StageScheduler;
+import com.github.lernejo.korekto.toolkit.GradePart;
+import com.github.lernejo.korekto.toolkit.thirdparty.amqp.AmqpCapable;
+import com.rabbitmq.client.AMQP;
+import com.rabbitmq.client.Channel;
+import com.rabbitmq.client.Connection;
+import org.awaitility.Awaitility;
+import org.awaitility.core.ConditionTimeoutException;
+import org.jetbrains.annotations.NotNull;
+import retrofit2.Response;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Optional part (<code>-Dstress_part=true</code>) grading how the server listener copes with a burst of messages.
+ * <p>
+ * A burst of <code>-Dstress_messages=10000</code> messages is published with publisher confirms on a dedicated channel.
+ * Consume throughput is measured from the first publish until the queue is drained, and the latency to visibility from
+ * the publish of each message until it is first displayed by GET /api/message, which is polled meanwhile.
+ * As the server only displays the last messages, latencies are only known for a sample of the burst, and only throughput
+ * is graded when none of the burst was seen.
+ * <p>
+ * Pass thresholds are <code>-Dstress_min_throughput=500</code> (messages per second) and
+ * <code>-Dstress_max_p99_latency_ms=2000</code>, the whole burst having to be consumed within
+ * <code>-Dstress_timeout=60</code> seconds.
+ */
+public class Part5Grader implements StagedPartGrader, DependentPartGrader, AmqpCapable {
+
+    private static final Pattern STRESS_MESSAGE = Pattern.compile("stress-(\\d+)");
+    private static final long VISIBILITY_POLL_DELAY_MS = 20L;
+
+    private final int messages = Integer.parseInt(System.getProperty("stress_messages", "10000"));
+    private final double minThroughput = Double.parseDouble(System.getProperty("stress_min_throughput", "500"));
+    private final long maxP99LatencyMs = Long.parseLong(System.getProperty("stress_max_p99_latency_ms", "2000"));
+    private final long timeout = Long.parseLong(System.getProperty("stress_timeout", "60"));
+
+    @Override
+    public @NotNull String name() {
+        return "Part 5 - Listener under load";
+    }
+
+    @Override
+    public @NotNull Double maxGrade() {
+        return 2.0D;
+    }
+
+    @Override
+    public StageScheduler.Stage stage() {
+        return StageScheduler.Stage.RUNTIME;
+    }
+
+    @Override
+    public List<GradingFacts.Fact> requirements() {
+        return List.of(GradingFacts.Fact.BUILT, GradingFacts.Fact.COMPILED, GradingFacts.Fact.SERVER_BOOTS);
+    }
+
+    @Override
+    public @NotNull GradePart grade(LaunchingContext context) {
+        try {
+            context.serverSession.acquire(context);
+        } catch (CancellationException e) {
+            return result(List.of(GradingFacts.Fact.SERVER_BOOTS.refutation(context)), 0.0D);
+        }
+
+        AtomicLongArray publishTimes = new AtomicLongArray(messages);
+        VisibilityPoller poller = new VisibilityPoller(context, publishTimes);
+        long startTime;
+        boolean drained;
+        try (Connection connection = context.newConnectionFactory().newConnection();
+             Channel publishChannel = connection.createChannel();
+             Channel monitorChannel = connection.createChannel()) {
+            if (!doesQueueExists(connection, Part3Grader.QUEUE_NAME)) {
+                return result(List.of("No queue named `" + Part3Grader.QUEUE_NAME + "` was created by the server when starting"), 0.0D);
+            }
+            AMQP.BasicProperties basicProperties = new AMQP.BasicProperties().builder().contentType("text/plain").deliveryMode(2).build();
+            publishChannel.confirmSelect();
+            poller.start();
+            startTime = System.nanoTime();
+            for (int i = 0; i < messages; i++) {
+                publishTimes.set(i, System.nanoTime());
+                publishChannel.basicPublish("", Part3Grader.QUEUE_NAME, true, false, basicProperties, ("stress-" + i).getBytes(StandardCharsets.UTF_8));
+            }
+            publishChannel.waitForConfirmsOrDie(TimeUnit.SECONDS.toMillis(timeout));
+            drained = awaitQueueDrained(monitorChannel);
+        } catch (IOException | TimeoutException e) {
+            context.markTransientFailure("Broker connection failed: " + e.getMessage());
+            throw new IllegalStateException("Could not connect to the broker", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Wait for publisher confirms have been interrupted!");
+        } finally {
+            poller.stop();
+        }
+        long consumeDurationMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime);
+
+        if (!drained) {
+            return result(List.of("The server did not consume the " + messages + " messages sent within " + timeout + " sec."), 0.0D);
+        }
+        double throughput = messages * 1000D / Math.max(1L, consumeDurationMs);
+        List<Long> latencies = poller.latencies();
+
+        double grade = maxGrade();
+        List<String> comments = new ArrayList<>();
+        if (latencies.isEmpty()) {
+            // the queue was drained, the server display may only lag behind the poller
+            comments.add(String.format(Locale.ROOT, "%d messages consumed in %.1f sec. (%.0f msg/s), none of them was seen on GET /api/message, latency is not graded",
+                messages, consumeDurationMs / 1000D, throughput));
+        } else {
+            comments.add(String.format(Locale.ROOT, "%d messages consumed in %.1f sec. (%.0f msg/s), latency to GET /api/message: p50 %d ms, p99 %d ms (%d samples)",
+                messages, consumeDurationMs / 1000D, throughput, GradingMetrics.percentile(latencies, 0.5D), GradingMetrics.percentile(latencies, 0.99D), latencies.size()));
+            latencies.forEach(context.metrics.timer("korekto_stress_visibility_latency_seconds")::record);
+        }
+        if (throughput < minThroughput) {
+            grade -= maxGrade() / 2;
+            comments.add(String.format(Locale.ROOT, "Throughput should be at least %.0f msg/s", minThroughput));
+        }
+        if (!latencies.isEmpty() && GradingMetrics.percentile(latencies, 0.99D) > maxP99LatencyMs) {
+            grade -= maxGrade() / 2;
+            comments.add("99th percentile of latency to GET /api/message should be at most " + maxP99LatencyMs + " ms");
+        }
+        return result(comments, grade);
+    }
+
+    private boolean awaitQueueDrained(Channel channel) {
+        try {
+            Awaitility.await().atMost(timeout, TimeUnit.SECONDS)
+                .pollInterval(20L, TimeUnit.MILLISECONDS)
+                .ignoreExceptions()
+                .until(() -> channel.messageCount(Part3Grader.QUEUE_NAME) == 0);
+            return true;
+        } catch (ConditionTimeoutException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Polls GET /api/message in the background, recording when each message of the burst is first displayed.
+     * Latencies are only computed once the poller is stopped, from publish times written by the publishing thread.
+     */
+    private static class VisibilityPoller implements Runnable {
+        private final LaunchingContext context;
+        private final AtomicLongArray publishTimes;
+        private final Map<Integer, Long> visibilityTimes = new ConcurrentHashMap<>();
+        private volatile boolean running;
+        private Thread thread;
+
+        private VisibilityPoller(LaunchingContext context, AtomicLongArray publishTimes) {
+            this.context = context;
+            this.publishTimes = publishTimes;
+        }
+
+        private void start() {
+            running = true;
+            thread = new Thread(this, "stress-visibility-" + context.serverPort);
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        private void stop() {
+            running = false;
+            if (thread != null) {
+                try {
+                    thread.join(1000L);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+
+        @Override
+        public void run() {
+            while (running) {
+                try {
+                    Response<List<String>> response = context.client.getMessages().execute();
+                    long seenTime = System.nanoTime();
+                    if (response.isSuccessful() && response.body() != null) {
+                        for (String message : response.body()) {
+                            Matcher matcher = STRESS_MESSAGE.matcher(message);
+                            if (matcher.matches()) {
+                                int index = Integer.parseInt(matcher.group(1));
+                                if (index < publishTimes.length()) {
+                                    visibilityTimes.putIfAbsent(index, seenTime);
+                                }
+                            }
+                        }
+                    }
+                    TimeUnit.MILLISECONDS.sleep(VISIBILITY_POLL_DELAY_MS);
+                } catch (IOException | RuntimeException e) {
+                    // the server may be overwhelmed, consumption is checked on the broker side
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+        }
+
+        private List<Long> latencies() {
+            return visibilityTimes.entrySet().stream()
+                .filter(e -> publishTimes.get(e.getKey()) > 0L)
+                .map(e -> TimeUnit.NANOSECONDS.toMillis(e.getValue() - publishTimes.get(e.getKey())))
+                .sorted()
+                .toList();
+        }
+    }
+}
@@ -0,0 +1,171 @@
+package com.github.lernejo.korekto.grader.amqp.parts;
+
+import com.github.lernejo.korekto.toolkit.misc.SubjectForToolkitInclusion;
+import org.mozilla.universalchardet.UniversalDetector;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Optional;
+import java.util.function.Predicate;
+
+/**
+ * Lines written by a process, read as they come by one dedicated thread per stream.
+ * <p>
+ * Only the last lines are kept, in a bounded buffer.
+ * The charset of each stream is detected once, on its first chunk.
+ */
+@SubjectForToolkitInclusion
+public class ProcessOutput {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ProcessOutput.class);
+    private static final int CHARSET_DETECTION_BYTES = 4096;
+
+    private final int capacity;
+    private final Deque<String> lines = new ArrayDeque<>();
+    private long receivedLines;
+    private long lastLineNanos = System.nanoTime();
+    private int openStreams;
+
+    public ProcessOutput(List<InputStream> streams, int capacity) {
+        this.capacity = capacity;
+        this.openStreams = streams.size();
+        for (InputStream stream : streams) {
+            Thread reader = new Thread(() -> read(stream), "process-output-reader");
+            reader.setDaemon(true);
+            reader.start();
+        }
+    }
+
+    public static ProcessOutput capture(Process process, int capacity) {
+        return new ProcessOutput(List.of(process.getInputStream(), process.getErrorStream()), capacity);
+    }
+
+    private void read(InputStream stream) {
+        try {
+            BufferedInputStream bufferedStream = new BufferedInputStream(stream, CHARSET_DETECTION_BYTES);
+            Charset charset = detectCharset(bufferedStream);
+            BufferedReader reader = new BufferedReader(new InputStreamReader(bufferedStream, charset));
+            String line;
+            while ((line = reader.readLine()) != null) {
+                append(line);
+            }
+        } catch (IOException e) {
+            LOGGER.debug("Stopped reading process output: " + e.getMessage());
+        } finally {
+            synchronized (this) {
+                openStreams--;
+                notifyAll();
+            }
+        }
+    }
+
+    private static Charset detectCharset(BufferedInputStream stream) throws IOException {
+        stream.mark(CHARSET_DETECTION_BYTES);
+        byte[] firstChunk = new byte[CHARSET_DETECTION_BYTES];
+        int read = stream.read(firstChunk);
+        stream.reset();
+        if (read <= 0) {
+            return StandardCharsets.UTF_8;
+        }
+        UniversalDetector detector = new UniversalDetector();
+        detector.handleData(firstChunk, 0, read);
+        detector.dataEnd();
+        String detectedCharset = detector.getDetectedCharset();
+        return detectedCharset != null ? Charset.forName(detectedCharset) : StandardCharsets.UTF_8;
+    }
+
+    private synchronized void append(String line) {
+        if (lines.size() == capacity) {
+            lines.removeFirst();
+        }
+        lines.addLast(line);
+        receivedLines++;
+        lastLineNanos = System.nanoTime();
+        notifyAll();
+    }
+
+    /**
+     * @return the first buffered line matching, waiting at most <code>timeoutMs</code> for it to be written
+     */
+    public synchronized Optional<String> awaitLine(Predicate<String> matcher, long timeoutMs) {
+        long deadline = System.nanoTime() + timeoutMs * 1_000_000L;
+        long checkedLines = 0;
+        while (true) {
+            long newLines = Math.min(receivedLines - checkedLines, lines.size());
+            Optional<String> match = lines.stream().skip(lines.size() - newLines).filter(matcher).findFirst();
+            checkedLines = receivedLines;
+            if (match.isPresent()) {
+                return match;
+            }
+            long remainingMs = (deadline - System.nanoTime()) / 1_000_000L;
+            if (remainingMs <= 0 || openStreams == 0) {
+                return Optional.empty();
+            }
+            waitAtMost(remainingMs);
+        }
+    }
+
+    /**
+     * Waits for the process to write nothing during <code>quietMs</code>, or for its streams to be closed, but at most <code>timeoutMs</code>.
+     *
+     * @return <code>true</code> if the output is quiescent
+     */
+    public synchronized boolean awaitQuiescence(long quietMs, long timeoutMs) {
+        long deadline = System.nanoTime() + timeoutMs * 1_000_000L;
+        while (openStreams > 0) {
+            long now = System.nanoTime();
+            long quietForMs = (now - lastLineNanos) / 1_000_000L;
+            if (quietForMs >= quietMs) {
+                return true;
+            }
+            long remainingMs = (deadline - now) / 1_000_000L;
+            if (remainingMs <= 0) {
+                return false;
+            }
+            waitAtMost(Math.min(remainingMs, quietMs - quietForMs));
+        }
+        return true;
+    }
+
+    /**
+     * Waits for all streams to be read until their end, but at most <code>timeoutMs</code>.
+     */
+    public synchronized void awaitClosed(long timeoutMs) {
+        long deadline = System.nanoTime() + timeoutMs * 1_000_000L;
+        long remainingMs;
+        while (openStreams > 0 && (remainingMs = (deadline - System.nanoTime()) / 1_000_000L) > 0) {
+            waitAtMost(remainingMs);
+        }
+    }
+
+    public synchronized List<String> lines() {
+        return new ArrayList<>(lines);
+    }
+
+    /**
+     * @return the last <code>maxLines</code> lines, as a single text
+     */
+    public synchronized String tail(int maxLines) {
+        return String.join("\n", lines.stream().skip(Math.max(0, lines.size() - maxLines)).toList());
+    }
+
+    private void waitAtMost(long ms) {
+        try {
+            wait(ms);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Wait for process output have been interrupted!");
+        }
+    }
+}
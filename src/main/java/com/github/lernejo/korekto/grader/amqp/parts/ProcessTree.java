@@ -0,0 +1,94 @@
+package com.github.lernejo.korekto.grader.amqp.parts;
+
+import com.github.lernejo.korekto.toolkit.misc.SubjectForToolkitInclusion;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Tears down launched processes along with the ones they forked (such as the server JVM forked by <code>spring-boot:run</code>),
+ * which would otherwise be left orphaned, holding memory and ports.
+ * <p>
+ * Descendants are listed before the root is killed, as they are re-parented once it is gone.
+ */
+@SubjectForToolkitInclusion
+public class ProcessTree {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ProcessTree.class);
+    private static final long EXIT_WAIT_MS = 5000L;
+
+    public static void destroy(Process process) {
+        destroy(process, 0L);
+    }
+
+    /**
+     * Asks the given process and its descendants to stop, and kills them if the root did not exit within the grace period.
+     */
+    public static void destroy(Process process, long gracePeriodMs) {
+        ProcessHandle handle;
+        try {
+            handle = process.toHandle();
+        } catch (UnsupportedOperationException e) {
+            // not an OS process
+            process.destroyForcibly();
+            return;
+        }
+        // listed once, as descendants of an exited root are not reachable anymore
+        List<ProcessHandle> tree = tree(handle);
+        if (gracePeriodMs > 0) {
+            tree.forEach(ProcessHandle::destroy);
+            try {
+                handle.onExit().get(gracePeriodMs, TimeUnit.MILLISECONDS);
+            } catch (TimeoutException | ExecutionException e) {
+                LOGGER.debug("Process " + handle.pid() + " did not stop within " + gracePeriodMs + " ms, killing it");
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        destroy(tree);
+    }
+
+    /**
+     * Kills the given process and all its descendants, and waits for them to exit.
+     */
+    public static void destroy(ProcessHandle root) {
+        destroy(tree(root));
+    }
+
+    private static List<ProcessHandle> tree(ProcessHandle root) {
+        List<ProcessHandle> tree = new ArrayList<>();
+        tree.add(root);
+        tree.addAll(root.descendants().toList());
+        return tree;
+    }
+
+    private static void destroy(List<ProcessHandle> tree) {
+        tree.forEach(ProcessHandle::destroyForcibly);
+        for (ProcessHandle process : tree) {
+            try {
+                process.onExit().get(EXIT_WAIT_MS, TimeUnit.MILLISECONDS);
+            } catch (TimeoutException | ExecutionException e) {
+                LOGGER.warn("Process " + process.pid() + " did not exit within " + EXIT_WAIT_MS + " ms");
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    /**
+     * Kills the descendants of the grader whose command line holds the given argument, and theirs.
+     * Used for processes only reachable through a handle not exposing them.
+     */
+    public static void destroyLaunchedWith(String argument) {
+        ProcessHandle.current().descendants()
+            .filter(p -> p.info().commandLine().map(c -> c.contains(argument)).orElse(false))
+            .toList()
+            .forEach(ProcessTree::destroy);
+    }
+}
@@ -0,0 +1,90 @@
+package com.github.lernejo.korekto.grader.amqp.parts;
+
+import com.github.lernejo.korekto.grader.amqp.LaunchingContext;
+import com.github.lernejo.korekto.toolkit.thirdparty.maven.MavenReader;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * Outcome of the single Maven invocation building a student project.
+ * <p>
+ * This invocation cleans, compiles and tests all modules, and exports the runtime classpath of each of them in
+ * {@value #CLASSPATH_FILE}, so that no other part needs to fork Maven afterward.
+ * Test failures do not stop the build, they are read from <b>surefire</b> reports.
+ * <p>
+ * A failed build is only reported as a compilation failure when the <b>maven-compiler-plugin</b> failed, other failures
+ * (dependency resolution, classpath export) are {@link Status#BUILD_FAILED}.
+ *
+ * @param status     outcome of the build
+ * @param testFailed <code>true</code> if any test failed or errored
+ * @param output     Maven output
+ * @param modules    modules declared in the root <i>pom.xml</i>
+ */
+public record ProjectBuild(Status status, boolean testFailed, String output, List<String> modules) {
+
+    public static final String CLASSPATH_FILE = "target/korekto-cp.txt";
+    private static final Pattern FAILURES_PATTERN = Pattern.compile("<testsuite[^>]*\\s(?:failures|errors)=\"([1-9]\\d*)\"");
+    private static final Pattern COMPILER_FAILURE_PATTERN = Pattern.compile("Failed to execute goal org\\.apache\\.maven\\.plugins:maven-compiler-plugin:[^:]+:(?:compile|testCompile)");
+    private static final Pattern FAILED_GOAL_PATTERN = Pattern.compile("\\[ERROR] (Failed to execute goal .*)");
+
+    public static ProjectBuild run(LaunchingContext context) {
+        List<String> modules = MavenReader.readModel(context.getExercise()).getModules();
+        MavenRunner.Result result = MavenRunner.get().execute(context,
+            "clean test dependency:build-classpath -Dmaven.test.failure.ignore=true -DincludeScope=runtime -Dmdep.outputFile=" + CLASSPATH_FILE);
+        Status status = result.successful() ? Status.BUILT : failureStatus(result.output());
+        return new ProjectBuild(status, status == Status.BUILT && hasTestFailures(context.getExercise().getRoot()), result.output(), modules);
+    }
+
+    static Status failureStatus(String output) {
+        return COMPILER_FAILURE_PATTERN.matcher(output).find() ? Status.COMPILATION_FAILED : Status.BUILD_FAILED;
+    }
+
+    public boolean compiled() {
+        return status == Status.BUILT;
+    }
+
+    /**
+     * @return the first failed goal reported by Maven, or its whole output if none is
+     */
+    public String failureSummary() {
+        Matcher matcher = FAILED_GOAL_PATTERN.matcher(output);
+        return matcher.find() ? matcher.group(1) : output;
+    }
+
+    private static boolean hasTestFailures(Path projectRoot) {
+        try (Stream<Path> files = Files.walk(projectRoot)) {
+            return files
+                .filter(p -> p.getFileName().toString().startsWith("TEST-") && p.getFileName().toString().endsWith(".xml"))
+                .filter(p -> p.getParent().getFileName().toString().equals("surefire-reports"))
+                .anyMatch(ProjectBuild::reportsFailures);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to read test reports of " + projectRoot, e);
+        }
+    }
+
+    private static boolean reportsFailures(Path report) {
+        try {
+            Matcher matcher = FAILURES_PATTERN.matcher(Files.readString(report, StandardCharsets.UTF_8));
+            return matcher.find();
+        } catch (IOException e) {
+            return true;
+        }
+    }
+
+    public enum Status {
+        BUILT,
+        COMPILATION_FAILED,
+        /**
+         * The build failed for another reason than compilation, which is not attributed to the student code.
+         */
+        BUILD_FAILED,
+    }
+}
@@ -0,0 +1,117 @@
+package com.github.lernejo.korekto.grader.amqp.parts;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Optional;
+
+/**
+ * Caps on the resources of the JVMs launched for a student (server and client), so that concurrent gradings can be
+ * packed without one runaway student starving the others.
+ * <ul>
+ *     <li><code>-Dstudent_max_heap=512m</code>: <code>-Xmx</code> of each JVM</li>
+ *     <li><code>-Dstudent_active_processors=2</code>: <code>-XX:ActiveProcessorCount</code> of each JVM, sizing its thread pools</li>
+ *     <li><code>-Dstudent_cgroup=/sys/fs/cgroup/korekto</code>: a cgroup v2 directory writable by the grader, under which
+ *     a cgroup is created for each student, limited with <code>-Dstudent_memory_max=1G</code> (<i>memory.max</i>)
+ *     and <code>-Dstudent_cpu_max=2</code> (<i>cpu.max</i>, in cores)</li>
+ * </ul>
+ * None is set by default.
+ */
+public class ResourceLimits implements AutoCloseable {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ResourceLimits.class);
+    private static final long CPU_PERIOD_MICROS = 100_000L;
+
+    private final Optional<String> maxHeap = Optional.ofNullable(System.getProperty("student_max_heap"));
+    private final Optional<String> activeProcessors = Optional.ofNullable(System.getProperty("student_active_processors"));
+    private final Optional<Path> cgroupRoot = Optional.ofNullable(System.getProperty("student_cgroup")).map(Paths::get);
+    private final Optional<String> memoryMax = Optional.ofNullable(System.getProperty("student_memory_max"));
+    private final Optional<Double> cpuMax = Optional.ofNullable(System.getProperty("student_cpu_max")).map(Double::parseDouble);
+    private final String name;
+    private Optional<Path> cgroup;
+
+    /**
+     * @param name of the student cgroup, unique among concurrent gradings
+     */
+    public ResourceLimits(String name) {
+        this.name = name;
+    }
+
+    public List<String> jvmOptions() {
+        List<String> options = new ArrayList<>();
+        maxHeap.ifPresent(h -> options.add("-Xmx" + h));
+        activeProcessors.ifPresent(p -> options.add("-XX:ActiveProcessorCount=" + p));
+        return options;
+    }
+
+    /**
+     * Moves the process in the student cgroup, processes it forks afterward belong to it as well.
+     */
+    public void confine(Process process) {
+        Optional<Path> cgroup = cgroup();
+        if (cgroup.isEmpty()) {
+            return;
+        }
+        try {
+            Files.writeString(cgroup.get().resolve("cgroup.procs"), String.valueOf(process.pid()));
+        } catch (IOException | UnsupportedOperationException e) {
+            LOGGER.warn("Unable to move process in " + cgroup.get() + ": " + e.getMessage());
+        }
+    }
+
+    private synchronized Optional<Path> cgroup() {
+        if (cgroup == null) {
+            cgroup = cgroupRoot.filter(root -> Files.exists(root.resolve("cgroup.controllers"))).flatMap(this::createCgroup);
+        }
+        return cgroup;
+    }
+
+    private Optional<Path> createCgroup(Path root) {
+        Path directory = root.resolve(name);
+        try {
+            enableController(root, "memory");
+            enableController(root, "cpu");
+            Files.createDirectories(directory);
+            if (memoryMax.isPresent()) {
+                Files.writeString(directory.resolve("memory.max"), memoryMax.get());
+            }
+            if (cpuMax.isPresent()) {
+                Files.writeString(directory.resolve("cpu.max"), String.format(Locale.ROOT, "%d %d", Math.round(cpuMax.get() * CPU_PERIOD_MICROS), CPU_PERIOD_MICROS));
+            }
+            return Optional.of(directory);
+        } catch (IOException e) {
+            LOGGER.warn("Unable to create cgroup " + directory + ", student processes are not confined: " + e.getMessage());
+            return Optional.empty();
+        }
+    }
+
+    private static void enableController(Path root, String controller) {
+        try {
+            Files.writeString(root.resolve("cgroup.subtree_control"), "+" + controller);
+        } catch (IOException e) {
+            LOGGER.debug("Unable to enable " + controller + " controller in " + root + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Removes the student cgroup, its processes having been stopped.
+     */
+    @Override
+    public synchronized void close() {
+        if (cgroup != null && cgroup.isPresent()) {
+            try {
+                Files.deleteIfExists(cgroup.get());
+            } catch (IOException e) {
+                LOGGER.debug("Unable to remove cgroup " + cgroup.get() + ": " + e.getMessage());
+            }
+        }
+        cgroup = null;
+    }
+}
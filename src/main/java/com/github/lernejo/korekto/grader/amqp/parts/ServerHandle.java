@@ -0,0 +1,11 @@
+package com.github.lernejo.korekto.grader.amqp.parts;
+
+/**
+ * A running student server, stopped on close.
+ */
+@FunctionalInterface
+public interface ServerHandle extends AutoCloseable {
+
+    @Override
+    void close();
+}
@@ -0,0 +1,142 @@
+package com.github.lernejo.korekto.grader.amqp.parts;
+
+import com.github.lernejo.korekto.grader.amqp.LaunchingContext;
+import com.github.lernejo.korekto.toolkit.thirdparty.maven.MavenExecutionHandle;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Stream;
+
+/**
+ * Starts the student server.
+ * <p>
+ * By default (<code>-Dserver_launch=classpath</code>), the server module classpath and its <b>@SpringBootApplication</b>
+ * class are resolved once, and the server is then started directly with <code>java -cp</code>.
+ * When that recipe cannot be resolved, or with <code>-Dserver_launch=maven</code>, the server is started through
+ * the <b>spring-boot-maven-plugin</b>.
+ */
+public class ServerLauncher {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ServerLauncher.class);
+
+    private final boolean fromClasspath = !"maven".equals(System.getProperty("server_launch", "classpath"));
+    private Optional<Recipe> recipe;
+    private boolean mavenPluginWarmedUp;
+
+    public ServerHandle start(LaunchingContext context) {
+        if (fromClasspath) {
+            Optional<Recipe> recipe = recipe(context);
+            if (recipe.isPresent()) {
+                return recipe.get().start(context);
+            }
+        }
+        return startWithMaven(context);
+    }
+
+    private synchronized Optional<Recipe> recipe(LaunchingContext context) {
+        if (recipe == null) {
+            recipe = resolveRecipe(context);
+        }
+        return recipe;
+    }
+
+    private Optional<Recipe> resolveRecipe(LaunchingContext context) {
+        try {
+            ModuleClasspath classpath = ModuleClasspath.of(context, context.modules.size() > 0 ? "server" : null);
+            Optional<String> mainClass = findSpringBootApplication(classpath.classesDirectory());
+            if (mainClass.isEmpty()) {
+                LOGGER.debug("No single @SpringBootApplication class found in " + classpath.classesDirectory() + ", falling back to spring-boot-maven-plugin");
+            }
+            return mainClass.map(m -> new Recipe(classpath, classpath.writeArgumentFile("korekto-cp.args"), m));
+        } catch (RuntimeException e) {
+            LOGGER.debug("Unable to resolve server classpath, falling back to spring-boot-maven-plugin: " + e.getMessage());
+            return Optional.empty();
+        }
+    }
+
+    private ServerHandle startWithMaven(LaunchingContext context) {
+        synchronized (this) {
+            if (!mavenPluginWarmedUp) {
+                MavenRunner.get().execute(context, "org.springframework.boot:spring-boot-maven-plugin:2.5.5:help");
+                mavenPluginWarmedUp = true;
+            }
+        }
+        String serverModuleSpec = context.modules.size() > 0 ? "-pl :server " : "";
+        List<String> jvmArguments = new ArrayList<>();
+        jvmArguments.add("-Dserver.port=" + context.serverPort);
+        jvmArguments.addAll(context.springRabbitProperties());
+        jvmArguments.addAll(context.limits.jvmOptions());
+        MavenExecutionHandle handle = MavenRunner.get().executeAsync(context,
+            "org.springframework.boot:spring-boot-maven-plugin:2.5.5:run " + serverModuleSpec + " -Dspring-boot.run.jvmArguments='" + String.join(" ", jvmArguments) + "'");
+        return () -> {
+            // the handle does not expose the Maven process, which forks the server JVM: both are found by their arguments
+            ProcessTree.destroyLaunchedWith("-Dserver.port=" + context.serverPort + " ");
+            handle.close();
+        };
+    }
+
+    static Optional<String> findSpringBootApplication(Path classesDirectory) {
+        if (!Files.isDirectory(classesDirectory)) {
+            return Optional.empty();
+        }
+        try (Stream<Path> files = Files.walk(classesDirectory)) {
+            List<String> candidates = files
+                .filter(p -> p.toString().endsWith(".class"))
+                .filter(ServerLauncher::isSpringBootApplication)
+                .map(p -> classesDirectory.relativize(p).toString().replace(File.separatorChar, '.').replaceAll("\\.class$", ""))
+                .toList();
+            return candidates.size() == 1 ? Optional.of(candidates.get(0)) : Optional.empty();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to scan " + classesDirectory, e);
+        }
+    }
+
+    private static boolean isSpringBootApplication(Path classFile) {
+        try {
+            String content = new String(Files.readAllBytes(classFile), StandardCharsets.ISO_8859_1);
+            return content.contains("Lorg/springframework/boot/autoconfigure/SpringBootApplication;")
+                && content.contains("([Ljava/lang/String;)V");
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    private record Recipe(ModuleClasspath classpath, Path argumentFile, String mainClass) {
+
+        private ServerHandle start(LaunchingContext context) {
+            List<String> command = new ArrayList<>();
+            AppCds.Launch cds = AppCds.launch(classpath);
+            command.add(Paths.get(System.getProperty("java.home")).resolve("bin").resolve("java").toString());
+            command.addAll(cds.jvmOptions());
+            command.addAll(context.limits.jvmOptions());
+            command.add("@" + argumentFile);
+            command.add("-Dserver.port=" + context.serverPort);
+            command.addAll(context.springRabbitProperties());
+            command.add(mainClass);
+            ProcessBuilder processBuilder = new ProcessBuilder()
+                .directory(classpath.moduleRoot().toFile())
+                .command(command)
+                .redirectErrorStream(true)
+                .redirectOutput(classpath.moduleRoot().resolve("target").resolve("korekto-server.log").toFile());
+            try {
+                Process process = processBuilder.start();
+                context.limits.confine(process);
+                cds.started(process);
+                return new CloseableProcess(process, cds.stopGracePeriodMs())::close;
+            } catch (IOException e) {
+                cds.failed();
+                throw new UncheckedIOException("Cannot start " + mainClass + ": " + e.getMessage(), e);
+            }
+        }
+    }
+}
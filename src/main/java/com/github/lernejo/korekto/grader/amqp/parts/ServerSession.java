@@ -0,0 +1,104 @@
+package com.github.lernejo.korekto.grader.amqp.parts;
+
+import com.github.lernejo.korekto.grader.amqp.AdaptiveTimeouts;
+import com.github.lernejo.korekto.grader.amqp.GradingFacts;
+import com.github.lernejo.korekto.grader.amqp.GradingMetrics;
+import com.github.lernejo.korekto.grader.amqp.LaunchingContext;
+import com.github.lernejo.korekto.toolkit.misc.Ports;
+import com.rabbitmq.client.Channel;
+import com.rabbitmq.client.Connection;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Student server shared by the parts of a grading job.
+ * <p>
+ * The server is booted by the first part needing it, and kept running for the following ones.
+ * Between parts, the <code>chat_messages</code> queue is purged and the server is only restarted if it stopped listening.
+ * With <code>-Dserver_session=per_part</code>, the server is restarted for each part instead.
+ */
+public class ServerSession implements AutoCloseable {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ServerSession.class);
+
+    private final boolean restartForEachPart = "per_part".equals(System.getProperty("server_session", "shared"));
+    private final ServerLauncher launcher = new ServerLauncher();
+    private final int serverPort;
+    private final GradingMetrics metrics;
+    private ServerHandle server;
+
+    public ServerSession(int serverPort, GradingMetrics metrics) {
+        this.serverPort = serverPort;
+        this.metrics = metrics;
+    }
+
+    /**
+     * Establishes whether the server boots, so that parts requiring it are not graded after a first failure.
+     *
+     * @throws java.util.concurrent.CancellationException if the server did not start within {@link LaunchingContext#serverStartTimeout()}
+     */
+    public synchronized void acquire(LaunchingContext context) {
+        if (server != null && !restartForEachPart && isListening()) {
+            purgeQueue(context);
+            return;
+        }
+        stop();
+        long startTime = System.currentTimeMillis();
+        server = launcher.start(context);
+        try {
+            Ports.waitForPortToBeListenedTo(serverPort, TimeUnit.MILLISECONDS, context.serverStartTimeout());
+        } catch (CancellationException e) {
+            context.facts.establish(GradingFacts.Fact.SERVER_BOOTS, false);
+            context.markTimeout("Server start timeout", AdaptiveTimeouts.Latency.SERVER_START);
+            stop();
+            throw e;
+        } catch (RuntimeException e) {
+            stop();
+            throw e;
+        }
+        context.facts.establish(GradingFacts.Fact.SERVER_BOOTS, true);
+        long startDuration = System.currentTimeMillis() - startTime;
+        context.timeouts.record(AdaptiveTimeouts.Latency.SERVER_START, startDuration);
+        metrics.timer("korekto_server_start_seconds").record(startDuration);
+    }
+
+    private boolean isListening() {
+        try (Socket socket = new Socket()) {
+            socket.connect(new InetSocketAddress("localhost", serverPort), 200);
+            return true;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    private void purgeQueue(LaunchingContext context) {
+        try (Connection connection = context.newConnectionFactory().newConnection();
+             Channel channel = connection.createChannel()) {
+            channel.queuePurge(Part3Grader.QUEUE_NAME);
+        } catch (IOException | TimeoutException e) {
+            LOGGER.debug("Unable to purge queue " + Part3Grader.QUEUE_NAME + ": " + e.getMessage());
+        }
+    }
+
+    private void stop() {
+        if (server != null) {
+            server.close();
+            server = null;
+            long startTime = System.currentTimeMillis();
+            Ports.waitForPortToBeFreed(serverPort, TimeUnit.SECONDS, 5L);
+            metrics.timer("korekto_port_release_seconds").record(System.currentTimeMillis() - startTime);
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        stop();
+    }
+}
@@ -0,0 +1,14 @@
+package com.github.lernejo.korekto.grader.amqp.parts;
+
+import com.github.lernejo.korekto.grader.amqp.LaunchingContext;
+import com.github.lernejo.korekto.grader.amqp.StageScheduler;
+import com.github.lernejo.korekto.toolkit.PartGrader;
+
+/**
+ * Part grader whose grading holds a slot of a {@link StageScheduler.Stage}.
+ * Other part graders are not bounded.
+ */
+public interface StagedPartGrader extends PartGrader<LaunchingContext> {
+
+    StageScheduler.Stage stage();
+}
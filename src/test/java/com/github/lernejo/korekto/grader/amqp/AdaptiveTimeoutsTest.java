@@ -0,0 +1,53 @@
+package com.github.lernejo.korekto.grader.amqp;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class AdaptiveTimeoutsTest {
+
+    @Test
+    void configured_timeout_is_used_until_enough_latencies_are_known() {
+        AdaptiveTimeouts timeouts = new AdaptiveTimeouts(null, () -> 1.0D);
+        for (int i = 1; i < AdaptiveTimeouts.MIN_SAMPLES; i++) {
+            timeouts.record(AdaptiveTimeouts.Latency.SERVER_START, 2_000L);
+        }
+
+        assertThat(timeouts.timeoutMillis(AdaptiveTimeouts.Latency.SERVER_START, 40_000L)).isEqualTo(40_000L);
+    }
+
+    @Test
+    void timeout_is_derived_from_the_95th_percentile_of_latencies() {
+        AdaptiveTimeouts timeouts = new AdaptiveTimeouts(null, () -> 1.0D);
+        for (long i = 1; i <= 100; i++) {
+            timeouts.record(AdaptiveTimeouts.Latency.SERVER_START, i * 100L);
+        }
+
+        assertThat(timeouts.percentile(AdaptiveTimeouts.Latency.SERVER_START, 0.95D)).hasValue(9_500L);
+        assertThat(timeouts.timeoutMillis(AdaptiveTimeouts.Latency.SERVER_START, 40_000L)).isEqualTo(28_500L);
+    }
+
+    @Test
+    void timeout_is_bounded_and_scaled_by_load() {
+        AdaptiveTimeouts timeouts = new AdaptiveTimeouts(null, () -> 2.0D);
+        for (int i = 0; i < AdaptiveTimeouts.MIN_SAMPLES; i++) {
+            timeouts.record(AdaptiveTimeouts.Latency.SERVER_START, 100L);
+            timeouts.record(AdaptiveTimeouts.Latency.MESSAGE_CONSUMPTION, 10_000L);
+        }
+
+        assertThat(timeouts.timeoutMillis(AdaptiveTimeouts.Latency.SERVER_START, 40_000L)).isEqualTo(5_000L);
+        assertThat(timeouts.timeoutMillis(AdaptiveTimeouts.Latency.MESSAGE_CONSUMPTION, 4_000L)).isEqualTo(8_000L);
+    }
+
+    @Test
+    void timeout_is_shortened_only_once_derived_from_latencies() {
+        AdaptiveTimeouts timeouts = new AdaptiveTimeouts(null, () -> 1.0D);
+        assertThat(timeouts.isShortened(AdaptiveTimeouts.Latency.SERVER_START, 40_000L)).isFalse();
+
+        for (int i = 0; i < AdaptiveTimeouts.MIN_SAMPLES; i++) {
+            timeouts.record(AdaptiveTimeouts.Latency.SERVER_START, 2_000L);
+        }
+
+        assertThat(timeouts.isShortened(AdaptiveTimeouts.Latency.SERVER_START, 40_000L)).isTrue();
+    }
+}
@@ -0,0 +1,121 @@
+package com.github.lernejo.korekto.grader.amqp;
+
+import com.github.lernejo.korekto.grader.amqp.parts.DependentPartGrader;
+import com.github.lernejo.korekto.toolkit.GradePart;
+import com.github.lernejo.korekto.toolkit.GradingConfiguration;
+import org.jetbrains.annotations.NotNull;
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Dispatch of students and parts by the {@link AmqpGrader}, with stub gradings, no broker being started.
+ */
+class AmqpGraderDispatchTest {
+
+    private final AmqpGrader grader = new AmqpGrader(null);
+
+    @Test
+    void all_students_are_graded_and_failures_reported_together() {
+        List<LaunchingContext> contexts = List.of(context(), context(), context());
+        Set<LaunchingContext> graded = ConcurrentHashMap.newKeySet();
+
+        IllegalStateException failure = null;
+        try {
+            grader.runAll(contexts, c -> {
+                graded.add(c);
+                if (c != contexts.get(1)) {
+                    throw new IllegalArgumentException("Grading #" + contexts.indexOf(c) + " failed");
+                }
+            });
+        } catch (IllegalStateException e) {
+            failure = e;
+        }
+
+        assertThat(graded).hasSize(3);
+        assertThat(failure).isNotNull();
+        assertThat(Arrays.stream(failure.getSuppressed()).map(Throwable::getMessage).toList())
+            .containsExactlyInAnyOrder("Grading #0 failed", "Grading #2 failed");
+    }
+
+    @Test
+    void no_failure_is_reported_when_all_gradings_succeed() {
+        Set<LaunchingContext> graded = ConcurrentHashMap.newKeySet();
+
+        grader.runAll(List.of(context(), context()), graded::add);
+
+        assertThat(graded).hasSize(2);
+    }
+
+    @Test
+    void part_requiring_a_refuted_fact_is_not_graded() {
+        LaunchingContext context = context();
+        context.facts.establish(GradingFacts.Fact.BUILT, true);
+        context.facts.establish(GradingFacts.Fact.CLIENT_MODULE, false);
+        context.facts.establish(GradingFacts.Fact.SERVER_BOOTS, false);
+        StubDependentPart part = new StubDependentPart(List.of(GradingFacts.Fact.BUILT, GradingFacts.Fact.CLIENT_MODULE, GradingFacts.Fact.SERVER_BOOTS));
+
+        GradePart result = grader.applyPartGrader(context, part);
+
+        assertThat(part.gradings.get()).isEqualTo(0);
+        assertThat(result.getGrade()).isEqualTo(0.0D);
+        assertThat(result.getComments()).containsExactly(GradingFacts.Fact.CLIENT_MODULE.refutation(context));
+    }
+
+    @Test
+    void part_requiring_established_or_unknown_facts_is_graded() {
+        LaunchingContext context = context();
+        context.facts.establish(GradingFacts.Fact.BUILT, true);
+        StubDependentPart part = new StubDependentPart(List.of(GradingFacts.Fact.BUILT, GradingFacts.Fact.COMPILED));
+
+        GradePart result = grader.applyPartGrader(context, part);
+
+        assertThat(part.gradings.get()).isEqualTo(1);
+        assertThat(result.getGrade()).isEqualTo(1.0D);
+    }
+
+    private LaunchingContext context() {
+        return grader.gradingContext(new GradingConfiguration("https://github.com/lernejo/amqp_training", "", "", Path.of("target")));
+    }
+
+    private static class StubDependentPart implements DependentPartGrader {
+
+        private final List<GradingFacts.Fact> requirements;
+        private final AtomicInteger gradings = new AtomicInteger();
+
+        private StubDependentPart(List<GradingFacts.Fact> requirements) {
+            this.requirements = requirements;
+        }
+
+        @Override
+        public List<GradingFacts.Fact> requirements() {
+            return requirements;
+        }
+
+        @NotNull
+        @Override
+        public String name() {
+            return "Dependent part";
+        }
+
+        @NotNull
+        @Override
+        public Double maxGrade() {
+            return 1.0D;
+        }
+
+        @NotNull
+        @Override
+        public GradePart grade(LaunchingContext context) {
+            gradings.incrementAndGet();
+            return result(List.of(), maxGrade());
+        }
+    }
+}
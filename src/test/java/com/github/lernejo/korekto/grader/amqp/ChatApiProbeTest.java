@@ -0,0 +1,35 @@
+package com.github.lernejo.korekto.grader.amqp;
+
+import java.util.OptionalInt;
+
+import okhttp3.MediaType;
+import okhttp3.ResponseBody;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ChatApiProbeTest {
+
+    @Test
+    void counts_elements_of_a_json_array() {
+        assertThat(ChatApiProbe.countElements(json("[]"))).isEqualTo(OptionalInt.of(0));
+        assertThat(ChatApiProbe.countElements(json("[\"a\", \"b\", \"c\"]"))).isEqualTo(OptionalInt.of(3));
+    }
+
+    @Test
+    void nested_values_count_as_one_element() {
+        assertThat(ChatApiProbe.countElements(json("[\"a\", [\"b\", \"c\"], {\"d\": [1, 2]}]"))).isEqualTo(OptionalInt.of(3));
+    }
+
+    @Test
+    void nothing_is_counted_when_the_body_is_not_a_json_array() {
+        assertThat(ChatApiProbe.countElements(null)).isEqualTo(OptionalInt.empty());
+        assertThat(ChatApiProbe.countElements(json("{\"messages\": []}"))).isEqualTo(OptionalInt.empty());
+        assertThat(ChatApiProbe.countElements(json("hello"))).isEqualTo(OptionalInt.empty());
+        assertThat(ChatApiProbe.countElements(json("[\"a\", \"b\""))).isEqualTo(OptionalInt.empty());
+    }
+
+    private static ResponseBody json(String content) {
+        return ResponseBody.create(MediaType.get("application/json"), content);
+    }
+}
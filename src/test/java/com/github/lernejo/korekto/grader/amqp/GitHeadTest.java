@@ -0,0 +1,57 @@
+package com.github.lernejo.korekto.grader.amqp;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class GitHeadTest {
+
+    private static final String COMMIT = "4b825dc642cb6eb9a060e54bf8d69288fbee4904";
+
+    @TempDir
+    Path repository;
+
+    @Test
+    void detached_head_is_read_as_is() throws IOException {
+        writeGitFile("HEAD", COMMIT + "\n");
+
+        assertThat(GitHead.commit(repository)).hasValue(COMMIT);
+    }
+
+    @Test
+    void branch_head_is_read_from_its_ref() throws IOException {
+        writeGitFile("HEAD", "ref: refs/heads/main\n");
+        writeGitFile("refs/heads/main", COMMIT + "\n");
+
+        assertThat(GitHead.commit(repository)).hasValue(COMMIT);
+    }
+
+    @Test
+    void branch_head_is_read_from_packed_refs() throws IOException {
+        writeGitFile("HEAD", "ref: refs/heads/main\n");
+        writeGitFile("packed-refs", """
+            # pack-refs with: peeled fully-peeled sorted
+            0000000000000000000000000000000000000000 refs/heads/feature
+            %s refs/heads/main
+            ^1111111111111111111111111111111111111111
+            """.formatted(COMMIT));
+
+        assertThat(GitHead.commit(repository)).hasValue(COMMIT);
+    }
+
+    @Test
+    void missing_repository_has_no_commit() {
+        assertThat(GitHead.commit(repository)).isEmpty();
+    }
+
+    private void writeGitFile(String path, String content) throws IOException {
+        Path file = repository.resolve(".git").resolve(path);
+        Files.createDirectories(file.getParent());
+        Files.writeString(file, content);
+    }
+}
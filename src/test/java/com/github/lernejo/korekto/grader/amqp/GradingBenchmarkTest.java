@@ -0,0 +1,179 @@
+package com.github.lernejo.korekto.grader.amqp;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.github.lernejo.korekto.toolkit.Exercise;
+import com.github.lernejo.korekto.toolkit.GradePart;
+import com.github.lernejo.korekto.toolkit.GradingConfiguration;
+import com.github.lernejo.korekto.toolkit.PartGrader;
+import com.github.lernejo.korekto.toolkit.partgrader.GitHubActionsPartGrader;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Grades the bundled reference project (<i>src/test/resources/benchmark/chat-reference</i>) several times, and writes
+ * the duration of each part, along with peak memory and process count, as JSON in <i>target/grading-benchmark.json</i>.
+ * <p>
+ * Run with <code>mvn test -Dtest=GradingBenchmarkTest -Dgrading_benchmark=true [-Dgrading_benchmark_runs=5]</code>,
+ * Docker being required for the RabbitMQ broker.
+ * Caches are disabled, so that each run grades the project from scratch.
+ * The CI part is not graded, as it calls the GitHub API, the other parts only need the local broker.
+ */
+@EnabledIfSystemProperty(named = "grading_benchmark", matches = "true")
+class GradingBenchmarkTest {
+
+    private final int runs = Integer.parseInt(System.getProperty("grading_benchmark_runs", "5"));
+    private final Path output = Paths.get(System.getProperty("grading_benchmark_output", "target/grading-benchmark.json"));
+
+    @Test
+    void grade_reference_project() throws Exception {
+        String resultCache = System.setProperty("result_cache", "false");
+        String partMemo = System.setProperty("part_memo", "false");
+        try {
+            gradeWithoutCaches();
+        } finally {
+            restoreProperty("result_cache", resultCache);
+            restoreProperty("part_memo", partMemo);
+        }
+    }
+
+    private void gradeWithoutCaches() throws Exception {
+        Path reference = Paths.get(GradingBenchmarkTest.class.getResource("/benchmark/chat-reference").toURI());
+        Path workspace = Files.createTempDirectory("korekto-benchmark");
+
+        List<Long> totalDurations = new ArrayList<>();
+        List<List<Double>> grades = new ArrayList<>();
+        List<String> partNames = new ArrayList<>();
+        ResourceSampler sampler = new ResourceSampler();
+        try (AmqpGrader grader = new AmqpGrader()) {
+            List<PartGrader<LaunchingContext>> graders = grader.graders().stream()
+                .filter(g -> !(g instanceof GitHubActionsPartGrader))
+                .toList();
+            sampler.start();
+            for (int run = 0; run < runs; run++) {
+                Path root = workspace.resolve("run-" + run);
+                copy(reference, root);
+                LaunchingContext context = grader.gradingContext(new GradingConfiguration("https://github.com/lernejo/amqp_training", "", "", workspace));
+                context.setExercise(new Exercise("chat-reference", root));
+
+                long startTime = System.currentTimeMillis();
+                grader.run(context, graders);
+                totalDurations.add(System.currentTimeMillis() - startTime);
+
+                List<GradePart> parts = context.getGradeDetails().getParts();
+                if (partNames.isEmpty()) {
+                    parts.forEach(p -> partNames.add(p.getId()));
+                }
+                grades.add(parts.stream().map(GradePart::getGrade).toList());
+            }
+            sampler.stop();
+
+            Map<String, Object> results = new LinkedHashMap<>();
+            results.put("runs", runs);
+            results.put("total_ms", totalDurations);
+            Map<String, Object> partDurations = new LinkedHashMap<>();
+            for (String partName : partNames) {
+                partDurations.put(partName, grader.metrics().timer("korekto_part_seconds", "part", partName).recorded());
+            }
+            results.put("parts_ms", partDurations);
+            results.put("grades", grades);
+            results.put("peak_heap_bytes", sampler.peakHeap);
+            results.put("peak_child_processes", sampler.peakProcesses);
+            results.put("peak_child_processes_rss_bytes", sampler.peakProcessesRss);
+            results.put("phases", grader.metrics().toJson());
+
+            Files.createDirectories(output.toAbsolutePath().getParent());
+            new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT).writeValue(output.toFile(), results);
+        }
+
+        assertThat(totalDurations).hasSize(runs);
+        assertThat(partNames).hasSizeGreaterThanOrEqualTo(3);
+    }
+
+    private static void restoreProperty(String key, String value) {
+        if (value == null) {
+            System.clearProperty(key);
+        } else {
+            System.setProperty(key, value);
+        }
+    }
+
+    private static void copy(Path source, Path target) throws IOException {
+        try (Stream<Path> paths = Files.walk(source)) {
+            for (Path path : paths.toList()) {
+                Path copy = target.resolve(source.relativize(path).toString());
+                if (Files.isDirectory(path)) {
+                    Files.createDirectories(copy);
+                } else {
+                    Files.copy(path, copy);
+                }
+            }
+        }
+    }
+
+    /**
+     * Samples heap usage of the grader, and count and resident memory of its child processes (Maven, student server and client).
+     */
+    private static class ResourceSampler implements Runnable {
+        private volatile boolean running;
+        private Thread thread;
+        private long peakHeap;
+        private long peakProcesses;
+        private long peakProcessesRss;
+
+        private void start() {
+            running = true;
+            thread = new Thread(this, "benchmark-sampler");
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        private void stop() throws InterruptedException {
+            running = false;
+            thread.join();
+        }
+
+        @Override
+        public void run() {
+            Runtime runtime = Runtime.getRuntime();
+            while (running) {
+                peakHeap = Math.max(peakHeap, runtime.totalMemory() - runtime.freeMemory());
+                List<ProcessHandle> descendants = ProcessHandle.current().descendants().toList();
+                peakProcesses = Math.max(peakProcesses, descendants.size());
+                peakProcessesRss = Math.max(peakProcessesRss, descendants.stream().mapToLong(ResourceSampler::rss).sum());
+                try {
+                    Thread.sleep(100L);
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+        }
+
+        /**
+         * @return resident memory of the process in bytes, 0 when unknown (only available on Linux)
+         */
+        private static long rss(ProcessHandle process) {
+            try (Stream<String> lines = Files.lines(Paths.get("/proc", String.valueOf(process.pid()), "status"))) {
+                return lines
+                    .filter(l -> l.startsWith("VmRSS:"))
+                    .mapToLong(l -> Long.parseLong(l.replaceAll("\\D", "")) * 1024L)
+                    .findFirst()
+                    .orElse(0L);
+            } catch (IOException | RuntimeException e) {
+                return 0L;
+            }
+        }
+    }
+}
@@ -0,0 +1,51 @@
+package com.github.lernejo.korekto.grader.amqp;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class GradingMetricsTest {
+
+    @Test
+    void percentile_is_the_nearest_rank() {
+        List<Long> sorted = List.of(10L, 20L, 30L, 40L, 50L, 60L, 70L, 80L, 90L, 100L);
+
+        assertThat(GradingMetrics.percentile(sorted, 0.5D)).isEqualTo(50L);
+        assertThat(GradingMetrics.percentile(sorted, 0.95D)).isEqualTo(100L);
+        assertThat(GradingMetrics.percentile(sorted, 0.0D)).isEqualTo(10L);
+        assertThat(GradingMetrics.percentile(List.of(7L), 0.99D)).isEqualTo(7L);
+    }
+
+    @Test
+    void timers_are_exported_as_cumulative_prometheus_histograms() {
+        GradingMetrics metrics = new GradingMetrics();
+        metrics.timer("korekto_part_seconds", "part", "Part 1").record(3_000L);
+        metrics.timer("korekto_part_seconds", "part", "Part 1").record(40L);
+
+        List<String> lines = metrics.toPrometheus().lines().toList();
+
+        assertThat(lines).startsWith("# TYPE korekto_part_seconds histogram");
+        assertThat(lines).contains(
+            "korekto_part_seconds_bucket{part=\"Part 1\",le=\"0.050\"} 1",
+            "korekto_part_seconds_bucket{part=\"Part 1\",le=\"2.500\"} 1",
+            "korekto_part_seconds_bucket{part=\"Part 1\",le=\"5.000\"} 2",
+            "korekto_part_seconds_bucket{part=\"Part 1\",le=\"+Inf\"} 2",
+            "korekto_part_seconds_sum{part=\"Part 1\"} 3.040",
+            "korekto_part_seconds_count{part=\"Part 1\"} 2");
+        assertThat(lines).hasSize(1 + GradingMetrics.BUCKETS_SECONDS.length + 3);
+    }
+
+    @Test
+    void timers_of_a_same_metric_share_their_type_line_and_labels_are_escaped() {
+        GradingMetrics metrics = new GradingMetrics();
+        metrics.timer("korekto_part_seconds", "part", "Part \"1\"").record(10L);
+        metrics.timer("korekto_part_seconds", "part", "Part 2").record(10L);
+
+        List<String> lines = metrics.toPrometheus().lines().toList();
+
+        assertThat(lines.stream().filter(l -> l.startsWith("# TYPE")).count()).isEqualTo(1L);
+        assertThat(lines).contains("korekto_part_seconds_count{part=\"Part \\\"1\\\"\"} 1");
+    }
+}
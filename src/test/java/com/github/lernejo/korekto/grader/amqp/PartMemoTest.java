@@ -0,0 +1,102 @@
+package com.github.lernejo.korekto.grader.amqp;
+
+import com.github.lernejo.korekto.grader.amqp.parts.MemoizablePartGrader;
+import com.github.lernejo.korekto.toolkit.Exercise;
+import com.github.lernejo.korekto.toolkit.GradePart;
+import com.github.lernejo.korekto.toolkit.GradingConfiguration;
+import org.jetbrains.annotations.NotNull;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class PartMemoTest {
+
+    private final StubPart part = new StubPart("Part 2");
+    private final AtomicInteger gradings = new AtomicInteger();
+
+    @TempDir
+    Path workspace;
+
+    @Test
+    void grade_is_reused_while_sources_do_not_change() throws IOException {
+        PartMemo memo = new PartMemo(workspace.resolve("parts"));
+        LaunchingContext context = context();
+
+        memo.grade(context, part, grading(1.0D));
+        GradePart reused = memo.grade(context, part, grading(0.0D));
+
+        assertThat(gradings.get()).isEqualTo(1);
+        assertThat(reused.getGrade()).isEqualTo(1.0D);
+    }
+
+    @Test
+    void part_is_graded_again_when_its_sources_change() throws IOException {
+        PartMemo memo = new PartMemo(workspace.resolve("parts"));
+        LaunchingContext context = context();
+        memo.grade(context, part, grading(1.0D));
+
+        Files.writeString(workspace.resolve("project/server/src/Server.java"), "class Server { int port; }");
+        GradePart regraded = memo.grade(context, part, grading(0.0D));
+
+        assertThat(gradings.get()).isEqualTo(2);
+        assertThat(regraded.getGrade()).isEqualTo(0.0D);
+    }
+
+    @Test
+    void grade_is_not_memoized_after_a_transient_failure() throws IOException {
+        PartMemo memo = new PartMemo(workspace.resolve("parts"));
+        LaunchingContext context = context();
+
+        memo.grade(context, part, () -> {
+            context.markTransientFailure("Could not connect to the broker");
+            return grading(0.0D).get();
+        });
+        memo.grade(context, part, grading(1.0D));
+
+        assertThat(gradings.get()).isEqualTo(2);
+    }
+
+    private Supplier<GradePart> grading(double grade) {
+        return () -> {
+            gradings.incrementAndGet();
+            return part.result(List.of(), grade);
+        };
+    }
+
+    private LaunchingContext context() throws IOException {
+        Path root = workspace.resolve("project");
+        Files.createDirectories(root.resolve("server/src"));
+        Files.writeString(root.resolve("server/src/Server.java"), "class Server {}");
+        LaunchingContext context = new LaunchingContext(new GradingConfiguration("https://github.com/lernejo/amqp_training", "", "", workspace), null, null, new AdaptiveTimeouts(null, () -> 1.0D), null);
+        context.setExercise(new Exercise("project", root));
+        return context;
+    }
+
+    private record StubPart(String name) implements MemoizablePartGrader {
+
+        @Override
+        public List<String> sourceTrees(LaunchingContext context) {
+            return List.of("server");
+        }
+
+        @NotNull
+        @Override
+        public Double maxGrade() {
+            return 1.0D;
+        }
+
+        @NotNull
+        @Override
+        public GradePart grade(LaunchingContext context) {
+            return result(List.of(), maxGrade());
+        }
+    }
+}
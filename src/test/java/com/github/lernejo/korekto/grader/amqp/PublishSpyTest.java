@@ -0,0 +1,30 @@
+package com.github.lernejo.korekto.grader.amqp;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class PublishSpyTest {
+
+    @Test
+    void publish_carries_its_raw_body() {
+        assertThat(new PublishSpy.Publish(0L, "message 3").carries("message 3")).isTrue();
+        assertThat(new PublishSpy.Publish(0L, "message 3\n").carries("message 3")).isTrue();
+    }
+
+    @Test
+    void publish_carries_its_body_serialized_as_a_json_string() {
+        assertThat(new PublishSpy.Publish(0L, "\"message 3\"").carries("message 3")).isTrue();
+    }
+
+    @Test
+    void publish_does_not_carry_another_or_a_longer_text() {
+        assertThat(new PublishSpy.Publish(0L, "message 13").carries("message 1")).isFalse();
+        assertThat(new PublishSpy.Publish(0L, "{\"text\":\"message 1\"}").carries("message 1")).isFalse();
+    }
+
+    @Test
+    void delay_is_measured_from_the_given_time() {
+        assertThat(new PublishSpy.Publish(5_000_000L, "message 1").millisSince(2_000_000L)).isEqualTo(3L);
+    }
+}
@@ -0,0 +1,143 @@
+package com.github.lernejo.korekto.grader.amqp;
+
+import com.github.lernejo.korekto.toolkit.Exercise;
+import com.github.lernejo.korekto.toolkit.GradePart;
+import com.github.lernejo.korekto.toolkit.GradingConfiguration;
+import com.github.lernejo.korekto.toolkit.PartGrader;
+import org.jetbrains.annotations.NotNull;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ResultCacheTest {
+
+    private static final String COMMIT = "4b825dc642cb6eb9a060e54bf8d69288fbee4904";
+
+    private final List<PartGrader<LaunchingContext>> graders = List.of(new StubPart("Part 1"), new StubPart("Part 2"));
+
+    @TempDir
+    Path workspace;
+
+    @Test
+    void result_of_the_same_commit_is_reused() throws IOException {
+        ResultCache cache = new ResultCache(workspace.resolve("results"));
+        LaunchingContext context = context(COMMIT);
+
+        cache.put(context, graders, List.of(graders.get(0).result(List.of("ok"), 1.0D), graders.get(1).result(List.of("ko"), 0.0D)));
+        Optional<List<GradePart>> cached = cache.get(context(COMMIT), graders);
+
+        assertThat(cached).isPresent();
+        assertThat(cached.get()).hasSize(2);
+        assertThat(cached.get().get(0).getGrade()).isEqualTo(1.0D);
+        assertThat(cached.get().get(1).getComments()).containsExactly("ko");
+    }
+
+    @Test
+    void result_of_another_commit_is_not_reused() throws IOException {
+        ResultCache cache = new ResultCache(workspace.resolve("results"));
+
+        cache.put(context(COMMIT), graders, List.of(graders.get(0).result(List.of(), 1.0D), graders.get(1).result(List.of(), 1.0D)));
+
+        assertThat(cache.get(context("0000000000000000000000000000000000000001"), graders)).isEmpty();
+    }
+
+    @Test
+    void result_is_not_cached_after_a_transient_failure() throws IOException {
+        ResultCache cache = new ResultCache(workspace.resolve("results"));
+        LaunchingContext context = context(COMMIT);
+        context.markTransientFailure("Could not connect to the broker");
+
+        cache.put(context, graders, List.of(graders.get(0).result(List.of(), 0.0D), graders.get(1).result(List.of(), 0.0D)));
+
+        assertThat(cache.get(context(COMMIT), graders)).isEmpty();
+    }
+
+    @Test
+    void key_changes_with_grader_and_toolkit_versions() {
+        String key = ResultCache.key("grader-1", "toolkit-1", COMMIT);
+
+        assertThat(ResultCache.key("grader-1", "toolkit-1", COMMIT)).isEqualTo(key);
+        assertThat(ResultCache.key("grader-2", "toolkit-1", COMMIT)).isNotEqualTo(key);
+        assertThat(ResultCache.key("grader-1", "toolkit-2", COMMIT)).isNotEqualTo(key);
+    }
+
+    @Test
+    void key_changes_with_timeout_settings() {
+        String key = ResultCache.key("grader-1", "toolkit-1", COMMIT);
+        String previous = System.setProperty("queue_read_timeout", "12");
+        try {
+            assertThat(ResultCache.key("grader-1", "toolkit-1", COMMIT)).isNotEqualTo(key);
+        } finally {
+            restoreProperty("queue_read_timeout", previous);
+        }
+    }
+
+    @Test
+    void old_and_least_recently_used_entries_are_evicted() throws IOException {
+        Path directory = Files.createDirectories(workspace.resolve("results"));
+        Instant now = Instant.now();
+        Path expired = entry(directory, "expired", now.minus(Duration.ofDays(31)));
+        Path oldest = entry(directory, "oldest", now.minus(Duration.ofHours(3)));
+        Path older = entry(directory, "older", now.minus(Duration.ofHours(2)));
+        Path recent = entry(directory, "recent", now.minus(Duration.ofHours(1)));
+        String previous = System.setProperty("result_cache_max_entries", "2");
+        try {
+            new ResultCache(directory);
+        } finally {
+            restoreProperty("result_cache_max_entries", previous);
+        }
+
+        assertThat(Files.exists(expired)).isFalse();
+        assertThat(Files.exists(oldest)).isFalse();
+        assertThat(Files.exists(older)).isTrue();
+        assertThat(Files.exists(recent)).isTrue();
+    }
+
+    private LaunchingContext context(String commit) throws IOException {
+        Path root = workspace.resolve(commit);
+        Files.createDirectories(root.resolve(".git"));
+        Files.writeString(root.resolve(".git").resolve("HEAD"), commit + "\n");
+        LaunchingContext context = new LaunchingContext(new GradingConfiguration("https://github.com/lernejo/amqp_training", "", "", workspace), null, null, new AdaptiveTimeouts(null, () -> 1.0D), null);
+        context.setExercise(new Exercise("project", root));
+        return context;
+    }
+
+    private static Path entry(Path directory, String name, Instant lastModified) throws IOException {
+        Path entry = Files.writeString(directory.resolve(name + ".json"), "[]");
+        Files.setLastModifiedTime(entry, FileTime.from(lastModified));
+        return entry;
+    }
+
+    private static void restoreProperty(String name, String value) {
+        if (value == null) {
+            System.clearProperty(name);
+        } else {
+            System.setProperty(name, value);
+        }
+    }
+
+    private record StubPart(String name) implements PartGrader<LaunchingContext> {
+
+        @NotNull
+        @Override
+        public Double maxGrade() {
+            return 1.0D;
+        }
+
+        @NotNull
+        @Override
+        public GradePart grade(LaunchingContext context) {
+            return result(List.of(), maxGrade());
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package com.github.lernejo.korekto.grader.amqp;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class SourceTreesTest {
+
+    @TempDir
+    Path workspace;
+
+    @Test
+    void hash_does_not_depend_on_file_creation_order() throws IOException {
+        Path first = workspace.resolve("first");
+        write(first, "client/src/A.java", "class A {}");
+        write(first, "client/src/B.java", "class B {}");
+        Path second = workspace.resolve("second");
+        write(second, "client/src/B.java", "class B {}");
+        write(second, "client/src/A.java", "class A {}");
+
+        assertThat(SourceTrees.hash(first, List.of("client"))).isEqualTo(SourceTrees.hash(second, List.of("client")));
+    }
+
+    @Test
+    void build_outputs_are_ignored() throws IOException {
+        Path root = workspace.resolve("project");
+        write(root, "client/src/A.java", "class A {}");
+        String hash = SourceTrees.hash(root, List.of("client"));
+
+        write(root, "client/target/classes/A.class", "compiled");
+
+        assertThat(SourceTrees.hash(root, List.of("client"))).isEqualTo(hash);
+    }
+
+    @Test
+    void hash_changes_with_content_and_trees() throws IOException {
+        Path root = workspace.resolve("project");
+        write(root, "client/src/A.java", "class A {}");
+        write(root, "server/src/S.java", "class S {}");
+        String hash = SourceTrees.hash(root, List.of("client"));
+
+        assertThat(SourceTrees.hash(root, List.of("client", "server"))).isNotEqualTo(hash);
+
+        write(root, "client/src/A.java", "class A { int a; }");
+
+        assertThat(SourceTrees.hash(root, List.of("client"))).isNotEqualTo(hash);
+    }
+
+    private static void write(Path root, String path, String content) throws IOException {
+        Path file = root.resolve(path);
+        Files.createDirectories(file.getParent());
+        Files.writeString(file, content);
+    }
+}
@@ -0,0 +1,59 @@
+package com.github.lernejo.korekto.grader.amqp;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class StageSchedulerTest {
+
+    @Test
+    void each_stage_is_bounded_separately() throws Exception {
+        StageScheduler scheduler = new StageScheduler(4);
+        AtomicInteger runningBuilds = new AtomicInteger();
+        AtomicInteger maxRunningBuilds = new AtomicInteger();
+        CountDownLatch buildsReleased = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(6);
+        try {
+            List<Future<?>> builds = new ArrayList<>();
+            for (int i = 0; i < 6; i++) {
+                builds.add(executor.submit(() -> scheduler.run(StageScheduler.Stage.BUILD, () -> {
+                    maxRunningBuilds.accumulateAndGet(runningBuilds.incrementAndGet(), Math::max);
+                    try {
+                        return buildsReleased.await(10, TimeUnit.SECONDS);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        return false;
+                    } finally {
+                        runningBuilds.decrementAndGet();
+                    }
+                })));
+            }
+            long deadline = System.currentTimeMillis() + 5_000L;
+            while (runningBuilds.get() < 2 && System.currentTimeMillis() < deadline) {
+                TimeUnit.MILLISECONDS.sleep(10L);
+            }
+            TimeUnit.MILLISECONDS.sleep(100L);
+
+            assertThat(runningBuilds.get()).isEqualTo(2);
+            // build slots being all taken does not hold back the runtime stage
+            assertThat(scheduler.run(StageScheduler.Stage.RUNTIME, () -> "probed")).isEqualTo("probed");
+
+            buildsReleased.countDown();
+            for (Future<?> build : builds) {
+                build.get(10, TimeUnit.SECONDS);
+            }
+            assertThat(maxRunningBuilds.get()).isEqualTo(2);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
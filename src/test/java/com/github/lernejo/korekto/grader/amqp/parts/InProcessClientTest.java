@@ -0,0 +1,50 @@
+package com.github.lernejo.korekto.grader.amqp.parts;
+
+import org.junit.jupiter.api.Test;
+
+import java.net.URISyntaxException;
+import java.nio.file.Path;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class InProcessClientTest {
+
+    @Test
+    void class_calling_system_exit_is_detected() throws URISyntaxException {
+        assertThat(InProcessClient.callsSystemExitIn(classFile(Exiting.class))).isTrue();
+    }
+
+    @Test
+    void class_calling_runtime_halt_is_detected() throws URISyntaxException {
+        assertThat(InProcessClient.callsSystemExitIn(classFile(Halting.class))).isTrue();
+    }
+
+    @Test
+    void class_only_naming_exit_is_not_detected() throws URISyntaxException {
+        assertThat(InProcessClient.callsSystemExitIn(classFile(NamingExit.class))).isFalse();
+    }
+
+    private static Path classFile(Class<?> type) throws URISyntaxException {
+        return Path.of(type.getResource(type.getName().substring(type.getPackageName().length() + 1) + ".class").toURI());
+    }
+
+    static class Exiting {
+        void quit() {
+            System.exit(0);
+        }
+    }
+
+    static class Halting {
+        void quit() {
+            Runtime.getRuntime().halt(1);
+        }
+    }
+
+    static class NamingExit {
+        private final String label = "exit halt java/lang/System (I)V";
+
+        void exit(int code) {
+            System.out.println(label + code);
+        }
+    }
+}
@@ -0,0 +1,24 @@
+package com.github.lernejo.korekto.grader.amqp.parts;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class MavenRunnerTest {
+
+    @Test
+    void arguments_are_split_on_spaces() {
+        assertThat(MavenRunner.splitArguments("clean  test-compile -DskipTests ")).containsExactly("clean", "test-compile", "-DskipTests");
+    }
+
+    @Test
+    void single_quoted_arguments_are_kept_whole_without_their_quotes() {
+        assertThat(MavenRunner.splitArguments("dependency:build-classpath '-Dmdep.outputFile=target/class path.txt'"))
+            .containsExactly("dependency:build-classpath", "-Dmdep.outputFile=target/class path.txt");
+    }
+
+    @Test
+    void blank_arguments_give_nothing() {
+        assertThat(MavenRunner.splitArguments("  ")).isEmpty();
+    }
+}
@@ -0,0 +1,53 @@
+package com.github.lernejo.korekto.grader.amqp.parts;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ProcessOutputTest {
+
+    @Test
+    void keeps_only_last_lines() {
+        ProcessOutput output = new ProcessOutput(List.of(stream("a\nb\nc\nd\n")), 2);
+
+        output.awaitClosed(1000L);
+
+        assertThat(output.lines()).containsExactly("c", "d");
+        assertThat(output.tail(1)).isEqualTo("d");
+    }
+
+    @Test
+    void await_line_returns_as_soon_as_a_matching_line_is_written() throws IOException {
+        PipedOutputStream stdout = new PipedOutputStream();
+        ProcessOutput output = new ProcessOutput(List.of(new PipedInputStream(stdout)), 10);
+
+        stdout.write("booting\nready!\n".getBytes(StandardCharsets.UTF_8));
+        stdout.flush();
+
+        assertThat(output.awaitLine(l -> l.startsWith("ready"), 2000L)).contains("ready!");
+        assertThat(output.awaitLine(l -> l.startsWith("never"), 50L)).isEmpty();
+        stdout.close();
+    }
+
+    @Test
+    void quiescence_is_reached_when_nothing_is_written() throws IOException {
+        PipedOutputStream stdout = new PipedOutputStream();
+        ProcessOutput output = new ProcessOutput(List.of(new PipedInputStream(stdout)), 10);
+
+        long start = System.currentTimeMillis();
+        assertThat(output.awaitQuiescence(50L, 2000L)).isTrue();
+        assertThat(System.currentTimeMillis() - start).isLessThan(1000L);
+        stdout.close();
+    }
+
+    private static ByteArrayInputStream stream(String content) {
+        return new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8));
+    }
+}
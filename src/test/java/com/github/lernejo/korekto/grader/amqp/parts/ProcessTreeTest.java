@@ -0,0 +1,62 @@
+package com.github.lernejo.korekto.grader.amqp.parts;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.DisabledOnOs;
+import org.junit.jupiter.api.condition.OS;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@DisabledOnOs(OS.WINDOWS)
+class ProcessTreeTest {
+
+    @Test
+    void process_is_killed_along_with_its_descendants() throws IOException, InterruptedException {
+        Process process = startShellWithChild("sleep 60 & wait");
+        List<ProcessHandle> children = awaitChildren(process);
+
+        ProcessTree.destroy(process);
+
+        assertThat(process.isAlive()).isFalse();
+        assertThat(children.stream().noneMatch(ProcessHandle::isAlive)).isTrue();
+    }
+
+    @Test
+    void process_stopping_within_the_grace_period_is_not_killed() throws IOException, InterruptedException {
+        Process process = startShellWithChild("trap 'exit 0' TERM; sleep 60 & wait");
+        List<ProcessHandle> children = awaitChildren(process);
+
+        ProcessTree.destroy(process, 5_000L);
+
+        assertThat(process.exitValue()).isEqualTo(0);
+        assertThat(children.stream().noneMatch(ProcessHandle::isAlive)).isTrue();
+    }
+
+    @Test
+    void process_ignoring_the_stop_request_is_killed_after_the_grace_period() throws IOException, InterruptedException {
+        Process process = startShellWithChild("trap '' TERM; sleep 60 & wait");
+        awaitChildren(process);
+
+        long startTime = System.currentTimeMillis();
+        ProcessTree.destroy(process, 200L);
+
+        assertThat(process.isAlive()).isFalse();
+        assertThat(process.exitValue()).isNotEqualTo(0);
+        assertThat(System.currentTimeMillis() - startTime).isGreaterThanOrEqualTo(200L);
+    }
+
+    private static Process startShellWithChild(String script) throws IOException {
+        return new ProcessBuilder("sh", "-c", script).start();
+    }
+
+    private static List<ProcessHandle> awaitChildren(Process process) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5_000L;
+        while (process.descendants().findAny().isEmpty() && System.currentTimeMillis() < deadline) {
+            TimeUnit.MILLISECONDS.sleep(10L);
+        }
+        return process.descendants().toList();
+    }
+}
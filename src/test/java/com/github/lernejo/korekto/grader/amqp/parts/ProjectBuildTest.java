@@ -0,0 +1,22 @@
+package com.github.lernejo.korekto.grader.amqp.parts;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ProjectBuildTest {
+
+    @Test
+    void compiler_plugin_failure_is_a_compilation_failure() {
+        String output = "[ERROR] Failed to execute goal org.apache.maven.plugins:maven-compiler-plugin:3.8.1:testCompile (default-testCompile) on project server: Compilation failure";
+
+        assertThat(ProjectBuild.failureStatus(output)).isEqualTo(ProjectBuild.Status.COMPILATION_FAILED);
+    }
+
+    @Test
+    void other_failures_are_not_attributed_to_compilation() {
+        String output = "[ERROR] Failed to execute goal org.apache.maven.plugins:maven-dependency-plugin:3.1.2:build-classpath (default-cli) on project client: Could not resolve dependencies";
+
+        assertThat(ProjectBuild.failureStatus(output)).isEqualTo(ProjectBuild.Status.BUILD_FAILED);
+    }
+}
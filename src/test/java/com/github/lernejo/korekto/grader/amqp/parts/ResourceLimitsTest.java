@@ -0,0 +1,84 @@
+package com.github.lernejo.korekto.grader.amqp.parts;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.DisabledOnOs;
+import org.junit.jupiter.api.condition.OS;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ResourceLimitsTest {
+
+    @TempDir
+    Path cgroupRoot;
+
+    @Test
+    void no_option_is_set_by_default() {
+        ResourceLimits limits = withProperties(Map.of());
+
+        assertThat(limits.jvmOptions()).isEmpty();
+    }
+
+    @Test
+    void heap_and_processors_are_capped_through_jvm_options() {
+        ResourceLimits limits = withProperties(Map.of("student_max_heap", "512m", "student_active_processors", "2"));
+
+        assertThat(limits.jvmOptions()).containsExactly("-Xmx512m", "-XX:ActiveProcessorCount=2");
+    }
+
+    @Test
+    @DisabledOnOs(OS.WINDOWS)
+    void process_is_moved_in_a_limited_student_cgroup() throws IOException {
+        Files.createFile(cgroupRoot.resolve("cgroup.controllers"));
+        ResourceLimits limits = withProperties(Map.of(
+            "student_cgroup", cgroupRoot.toString(),
+            "student_memory_max", "1G",
+            "student_cpu_max", "1.5"));
+        Process process = new ProcessBuilder("sleep", "60").start();
+        try {
+            limits.confine(process);
+        } finally {
+            ProcessTree.destroy(process);
+        }
+
+        Path cgroup = cgroupRoot.resolve("korekto-test");
+        assertThat(Files.readString(cgroup.resolve("memory.max"))).isEqualTo("1G");
+        assertThat(Files.readString(cgroup.resolve("cpu.max"))).isEqualTo("150000 100000");
+        assertThat(Files.readString(cgroup.resolve("cgroup.procs"))).isEqualTo(String.valueOf(process.pid()));
+    }
+
+    @Test
+    void process_is_not_confined_without_cgroup_v2() {
+        ResourceLimits limits = withProperties(Map.of("student_cgroup", cgroupRoot.toString()));
+
+        limits.confine(null);
+
+        assertThat(Files.exists(cgroupRoot.resolve("korekto-test"))).isFalse();
+    }
+
+    private static ResourceLimits withProperties(Map<String, String> properties) {
+        Map<String, String> previous = new LinkedHashMap<>();
+        for (String name : new String[]{"student_max_heap", "student_active_processors", "student_cgroup", "student_memory_max", "student_cpu_max"}) {
+            previous.put(name, System.getProperty(name));
+            System.clearProperty(name);
+        }
+        properties.forEach(System::setProperty);
+        try {
+            return new ResourceLimits("korekto-test");
+        } finally {
+            previous.forEach((name, value) -> {
+                if (value == null) {
+                    System.clearProperty(name);
+                } else {
+                    System.setProperty(name, value);
+                }
+            });
+        }
+    }
+}
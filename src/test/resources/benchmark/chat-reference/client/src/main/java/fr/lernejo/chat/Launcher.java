@@ -0,0 +1,30 @@
+package fr.lernejo.chat;
+
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.util.Scanner;
+
+@SpringBootApplication
+public class Launcher {
+
+    public static void main(String[] args) {
+        try (ConfigurableApplicationContext context = new SpringApplicationBuilder(Launcher.class).web(WebApplicationType.NONE).run(args)) {
+            RabbitTemplate rabbitTemplate = context.getBean(RabbitTemplate.class);
+            Scanner scanner = new Scanner(System.in);
+            System.out.println("Input a message, we will send it for you (q to quit)");
+            while (scanner.hasNextLine()) {
+                String line = scanner.nextLine();
+                if ("q".equals(line)) {
+                    System.out.println("Bye");
+                    break;
+                }
+                rabbitTemplate.convertAndSend("", "chat_messages", line);
+                System.out.println("Message sent. Input a new message, we will send it for you (q to quit)");
+            }
+        }
+    }
+}
@@ -0,0 +1,16 @@
+package fr.lernejo.chat;
+
+import org.springframework.amqp.core.Queue;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+public class AmqpConfiguration {
+
+    static final String QUEUE_NAME = "chat_messages";
+
+    @Bean
+    Queue queue() {
+        return new Queue(QUEUE_NAME, true);
+    }
+}
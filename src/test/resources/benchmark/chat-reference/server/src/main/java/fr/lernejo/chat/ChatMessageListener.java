@@ -0,0 +1,19 @@
+package fr.lernejo.chat;
+
+import org.springframework.amqp.rabbit.annotation.RabbitListener;
+import org.springframework.stereotype.Component;
+
+@Component
+public class ChatMessageListener {
+
+    private final ChatMessageRepository repository;
+
+    public ChatMessageListener(ChatMessageRepository repository) {
+        this.repository = repository;
+    }
+
+    @RabbitListener(queues = AmqpConfiguration.QUEUE_NAME)
+    public void onMessage(String message) {
+        repository.addChatMessage(message);
+    }
+}
@@ -0,0 +1,26 @@
+package fr.lernejo.chat;
+
+import org.springframework.stereotype.Repository;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+
+@Repository
+public class ChatMessageRepository {
+
+    private static final int MAX_MESSAGES = 10;
+
+    private final Deque<String> messages = new ArrayDeque<>();
+
+    public synchronized void addChatMessage(String message) {
+        messages.addLast(message);
+        while (messages.size() > MAX_MESSAGES) {
+            messages.removeFirst();
+        }
+    }
+
+    public synchronized List<String> getLastTenMessages() {
+        return List.copyOf(messages);
+    }
+}
@@ -0,0 +1,18 @@
+package fr.lernejo.chat;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ChatMessageRepositoryTest {
+
+    @Test
+    void keeps_only_last_ten_messages() {
+        ChatMessageRepository repository = new ChatMessageRepository();
+        for (int i = 0; i < 12; i++) {
+            repository.addChatMessage("message " + i);
+        }
+
+        assertThat(repository.getLastTenMessages()).hasSize(10).startsWith("message 2").endsWith("message 11");
+    }
+}